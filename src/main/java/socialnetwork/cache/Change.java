@@ -0,0 +1,16 @@
+package socialnetwork.cache;
+
+public record Change(ChangeType type, long entityId, Long otherId) {
+
+    public static Change user(long userId) {
+        return new Change(ChangeType.USER, userId, null);
+    }
+
+    public static Change friendship(long userId, long friendId) {
+        return new Change(ChangeType.FRIENDSHIP, userId, friendId);
+    }
+
+    public static Change post(long postId, long userId) {
+        return new Change(ChangeType.POST, postId, userId);
+    }
+}
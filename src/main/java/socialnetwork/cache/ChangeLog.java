@@ -0,0 +1,46 @@
+package socialnetwork.cache;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+// Rows are written in the transaction of the change, so the other nodes see them exactly when the change is committed
+@Component
+public class ChangeLog {
+
+    private static final String INSERT_CHANGE = "INSERT INTO change_log (entity, entity_id, other_id, origin, changed_on) VALUES (?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    public ChangeLog(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public void record(Change change) {
+        jdbcTemplate.update(INSERT_CHANGE, change.type().name(), change.entityId(), change.otherId(), nodeId, Timestamp.valueOf(LocalDateTime.now()));
+    }
+
+    public void record(List<Change> changes) {
+        if(changes.isEmpty()) {
+            return;
+        }
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        jdbcTemplate.batchUpdate(INSERT_CHANGE, changes, changes.size(), (ps, change) -> {
+            ps.setString(1, change.type().name());
+            ps.setLong(2, change.entityId());
+            ps.setObject(3, change.otherId());
+            ps.setString(4, nodeId);
+            ps.setTimestamp(5, now);
+        });
+    }
+}
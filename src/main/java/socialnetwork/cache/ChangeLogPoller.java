@@ -0,0 +1,226 @@
+package socialnetwork.cache;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import socialnetwork.services.PostDeletedEvent;
+import socialnetwork.services.PostUploadedEvent;
+import socialnetwork.services.RelationshipChangedEvent;
+import socialnetwork.services.UserChangedEvent;
+import socialnetwork.services.UserDeletedEvent;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Applies the changes committed by the other nodes to the in-memory state of this node.
+// Auto-increment ids may commit out of order, so a skipped id is looked up again until it appears or times out.
+@Component
+@Slf4j
+public class ChangeLogPoller implements MeterBinder, DisposableBean {
+
+    private static final String SELECT_CHANGES = "SELECT id, entity, entity_id, other_id, origin FROM change_log";
+
+    private static final Duration PURGE_INTERVAL = Duration.ofMinutes(1);
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+
+    private final ChangeLog changeLog;
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final Duration pollInterval;
+
+    private final int batchSize;
+
+    private final Duration retention;
+
+    private final long gapTimeoutNanos;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("change-log-"));
+
+    private final Map<Long, Long> gaps = new LinkedHashMap<>();
+
+    private final AtomicLong applied = new AtomicLong();
+
+    private long cursor;
+
+    private volatile long lastPollNanos = System.nanoTime();
+
+    private long lastPurgeNanos;
+
+    public ChangeLogPoller(JdbcTemplate jdbcTemplate, NamedParameterJdbcTemplate namedJdbcTemplate, ChangeLog changeLog,
+                           ApplicationEventPublisher eventPublisher,
+                           @Value("${socialnetwork.change-log.poll-interval}") Duration pollInterval,
+                           @Value("${socialnetwork.change-log.batch-size}") int batchSize,
+                           @Value("${socialnetwork.change-log.retention}") Duration retention,
+                           @Value("${socialnetwork.change-log.gap-timeout}") Duration gapTimeout) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedJdbcTemplate = namedJdbcTemplate;
+        this.changeLog = changeLog;
+        this.eventPublisher = eventPublisher;
+        this.pollInterval = pollInterval;
+        this.batchSize = batchSize;
+        this.retention = retention;
+        this.gapTimeoutNanos = gapTimeout.toNanos();
+    }
+
+    // The in-memory state is loaded at startup, so only the later changes have to be applied
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void start() {
+        cursor = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) FROM change_log", Long.class);
+        lastPurgeNanos = System.nanoTime();
+        executor.scheduleWithFixedDelay(this::pollSafely, pollInterval.toMillis(), pollInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void poll() {
+        if(!gaps.isEmpty()) {
+            List<Row> filled = namedJdbcTemplate.query(SELECT_CHANGES + " WHERE id IN (:ids)", Map.of("ids", gaps.keySet()), this::mapRow);
+            filled.forEach(row -> gaps.remove(row.id()));
+            apply(filled);
+            long now = System.nanoTime();
+            gaps.values().removeIf(firstSeen -> now - firstSeen > gapTimeoutNanos);
+        }
+        List<Row> rows;
+        do {
+            rows = jdbcTemplate.query(SELECT_CHANGES + " WHERE id > ? ORDER BY id LIMIT ?", this::mapRow, cursor, batchSize);
+            long now = System.nanoTime();
+            for(Row row : rows) {
+                for(long missing = cursor + 1; missing < row.id() && gaps.size() < batchSize; missing++) {
+                    gaps.put(missing, now);
+                }
+                cursor = row.id();
+            }
+            apply(rows);
+        } while(rows.size() == batchSize);
+        lastPollNanos = System.nanoTime();
+        if(lastPollNanos - lastPurgeNanos > PURGE_INTERVAL.toNanos()) {
+            int purged = jdbcTemplate.update("DELETE FROM change_log WHERE changed_on < ?", Timestamp.valueOf(LocalDateTime.now().minus(retention)));
+            lastPurgeNanos = lastPollNanos;
+            log.debug("{} rows have been purged from the change log.", purged);
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("change.log.applied", applied, AtomicLong::get)
+                .description("The number of changes of other nodes applied on this node")
+                .register(registry);
+        Gauge.builder("change.log.gaps", this, ChangeLogPoller::getGapCount)
+                .description("The number of skipped change log ids waiting for their transaction to commit")
+                .register(registry);
+        Gauge.builder("change.log.staleness", this, poller -> (System.nanoTime() - poller.lastPollNanos) / 1e9)
+                .baseUnit("seconds")
+                .description("The time since the last successful poll of the change log")
+                .register(registry);
+    }
+
+    public synchronized int getGapCount() {
+        return gaps.size();
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    private void pollSafely() {
+        try {
+            poll();
+        } catch (RuntimeException e) {
+            log.warn("Polling the change log failed.", e);
+        }
+    }
+
+    // The rows only name what has changed, the current state is read from the tables. The cached contents need no
+    // eviction for a deleted post: they are addressed by their hash, so they can't go stale, and they are only reached
+    // through a post. The thumbnails are generated by the node the post was uploaded on, the generator only listens to
+    // the events published in a transaction.
+    private void apply(List<Row> rows) {
+        Set<Long> userIds = new LinkedHashSet<>();
+        Set<List<Long>> friendships = new LinkedHashSet<>();
+        Map<Long, Long> posts = new LinkedHashMap<>();
+        for(Row row : rows) {
+            if(row.origin().equals(changeLog.getNodeId())) {
+                continue;
+            }
+            applied.incrementAndGet();
+            switch(row.type()) {
+                case USER -> userIds.add(row.entityId());
+                case FRIENDSHIP -> friendships.add(List.of(row.entityId(), row.otherId()));
+                case POST -> posts.put(row.entityId(), row.otherId());
+            }
+        }
+        if(!userIds.isEmpty()) {
+            Map<Long, String[]> users = new HashMap<>();
+            namedJdbcTemplate.query("SELECT u.id, u.username, u.email, pd.real_name FROM users u LEFT JOIN personal_data pd ON pd.user_id = u.id WHERE u.id IN (:ids)",
+                    Map.of("ids", userIds), rs -> {
+                        users.put(rs.getLong(1), new String[] {rs.getString(2), rs.getString(3), rs.getString(4)});
+                    });
+            for(long userId : userIds) {
+                String[] user = users.get(userId);
+                if(user == null) {
+                    eventPublisher.publishEvent(new UserDeletedEvent(userId));
+                } else {
+                    eventPublisher.publishEvent(new UserChangedEvent(userId, user[0], user[1], user[2]));
+                }
+            }
+        }
+        if(!friendships.isEmpty()) {
+            List<Object[]> pairs = new ArrayList<>(friendships.size());
+            friendships.forEach(pair -> pairs.add(pair.toArray()));
+            Set<List<Long>> existing = new HashSet<>(namedJdbcTemplate.query("SELECT user_id, friend_id FROM users_to_users WHERE (user_id, friend_id) IN (:pairs)",
+                    Map.of("pairs", pairs), (rs, i) -> List.of(rs.getLong(1), rs.getLong(2))));
+            for(List<Long> pair : friendships) {
+                eventPublisher.publishEvent(new RelationshipChangedEvent(pair.get(0), pair.get(1), existing.contains(pair)));
+            }
+        }
+        if(!posts.isEmpty()) {
+            Set<Long> existing = new HashSet<>(namedJdbcTemplate.queryForList("SELECT id FROM posts WHERE id IN (:ids)",
+                    Map.of("ids", posts.keySet()), Long.class));
+            posts.forEach((postId, userId) -> {
+                if(existing.contains(postId)) {
+                    eventPublisher.publishEvent(new PostUploadedEvent(postId, userId));
+                } else {
+                    eventPublisher.publishEvent(new PostDeletedEvent(postId, userId));
+                }
+            });
+        }
+    }
+
+    private Row mapRow(ResultSet rs, int rowNum) throws SQLException {
+        long otherId = rs.getLong("other_id");
+        return new Row(rs.getLong("id"), ChangeType.valueOf(rs.getString("entity")), rs.getLong("entity_id"),
+                rs.wasNull() ? null : otherId, rs.getString("origin"));
+    }
+
+    private record Row(long id, ChangeType type, long entityId, Long otherId, String origin) {
+    }
+}
@@ -0,0 +1,6 @@
+package socialnetwork.cache;
+
+public enum ChangeType {
+
+    USER, FRIENDSHIP, POST
+}
@@ -0,0 +1,27 @@
+package socialnetwork.cache;
+
+import org.ehcache.jsr107.EhcacheCachingProvider;
+import org.ehcache.xml.XmlConfiguration;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import java.net.URI;
+import java.util.UUID;
+
+@Configuration
+public class EntityCacheConfig {
+
+    // The caching provider shares one manager per configuration file, so every application context gets a uniquely
+    // named one. Otherwise nodes started in the same JVM would share their caches and close them for each other.
+    @Bean
+    public HibernatePropertiesCustomizer entityCacheManagerCustomizer() {
+        EhcacheCachingProvider provider = (EhcacheCachingProvider) Caching.getCachingProvider(EhcacheCachingProvider.class.getName());
+        XmlConfiguration configuration = new XmlConfiguration(getClass().getResource("/ehcache.xml"));
+        CacheManager cacheManager = provider.getCacheManager(URI.create("urn:socialnetwork:entity-cache:" + UUID.randomUUID()), configuration);
+        return properties -> properties.put(ConfigSettings.CACHE_MANAGER, cacheManager);
+    }
+}
@@ -0,0 +1,99 @@
+package socialnetwork.cache;
+
+import jakarta.persistence.Cache;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.Session;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import socialnetwork.models.Post;
+import socialnetwork.models.User;
+import socialnetwork.repositories.UserRepository;
+import socialnetwork.services.PostDeletedEvent;
+import socialnetwork.services.PostUploadedEvent;
+import socialnetwork.services.RelationshipChangedEvent;
+import socialnetwork.services.UserChangedEvent;
+import socialnetwork.services.UserDeletedEvent;
+
+import java.util.Arrays;
+
+// Hibernate keeps the second-level cache in sync with its own writes only. The bulk imports write with plain JDBC
+// and the changes of the other nodes arrive through the change log, so their events evict the affected entries here.
+// The counter updates are not seen by Hibernate either, the users they change are evicted here one by one.
+// The cached query results are made stale by marking their tables changed, evicting them would let a result read from
+// a lagging replica before the eviction be put back as a fresh one. The listeners run first, so the caches built on
+// the entities, like UserCache, don't reload the old state.
+@Component
+public class EntityCacheEvictor {
+
+    private final Cache cache;
+
+    private final org.hibernate.Cache hibernateCache;
+
+    private final SessionFactoryImplementor sessionFactory;
+
+    private final String[] userSpaces;
+
+    public EntityCacheEvictor(EntityManagerFactory entityManagerFactory) {
+        this.cache = entityManagerFactory.getCache();
+        this.hibernateCache = cache.unwrap(org.hibernate.Cache.class);
+        this.sessionFactory = entityManagerFactory.unwrap(SessionFactoryImplementor.class);
+        this.userSpaces = Arrays.stream(sessionFactory.getMappingMetamodel().getEntityDescriptor(User.class).getQuerySpaces())
+                .map(String.class::cast)
+                .toArray(String[]::new);
+    }
+
+    public void evictAll() {
+        cache.evictAll();
+        hibernateCache.evictQueryRegions();
+    }
+
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUserChanged(UserChangedEvent event) {
+        cache.evict(User.class, event.userId());
+        invalidate(userSpaces);
+    }
+
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onRelationshipChanged(RelationshipChangedEvent event) {
+        cache.evict(User.class, event.userId());
+        cache.evict(User.class, event.friendId());
+        invalidate(UserRepository.COUNTER_SPACE);
+    }
+
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPostUploaded(PostUploadedEvent event) {
+        cache.evict(User.class, event.userId());
+        invalidate(UserRepository.COUNTER_SPACE);
+    }
+
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPostDeleted(PostDeletedEvent event) {
+        cache.evict(Post.class, event.postId());
+        cache.evict(User.class, event.userId());
+        invalidate(UserRepository.COUNTER_SPACE);
+    }
+
+    // The friend counts of the friends and the posts of the user have changed as well
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUserDeleted(UserDeletedEvent event) {
+        cache.evict(User.class);
+        cache.evict(Post.class);
+        invalidate(userSpaces);
+        invalidate(UserRepository.COUNTER_SPACE);
+    }
+
+    private void invalidate(String... spaces) {
+        try(Session session = sessionFactory.openSession()) {
+            sessionFactory.getCache().getTimestampsCache().invalidate(spaces, session.unwrap(SessionImplementor.class));
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package socialnetwork.cache;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import socialnetwork.dtos.UserDto;
+import socialnetwork.models.PersonalData;
+import socialnetwork.services.PostDeletedEvent;
+import socialnetwork.services.PostUploadedEvent;
+import socialnetwork.services.RelationshipChangedEvent;
+import socialnetwork.services.UserChangedEvent;
+import socialnetwork.services.UserDeletedEvent;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongFunction;
+
+@Component
+public class UserCache implements MeterBinder {
+
+    private final int maxSize;
+
+    private final long ttlNanos;
+
+    private final Map<Long, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final Map<Long, Load> loads = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong coalesced = new AtomicLong();
+
+    private final AtomicLong sizeEvictions = new AtomicLong();
+
+    private final AtomicLong expirations = new AtomicLong();
+
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private Timer loadTimer;
+
+    public UserCache(@Value("${socialnetwork.user-cache.max-size}") int maxSize, @Value("${socialnetwork.user-cache.ttl}") Duration ttl) {
+        this.maxSize = maxSize;
+        this.ttlNanos = ttl.toNanos();
+    }
+
+    // Concurrent misses of the same user wait for the load started by the first one. The cached profiles are shared,
+    // so every caller gets its own copy
+    public UserDto get(long userId, LongFunction<UserDto> loader) {
+        if(maxSize <= 0) {
+            return loader.apply(userId);
+        }
+        UserDto cached = lookup(userId);
+        if(cached != null) {
+            hits.incrementAndGet();
+            return copy(cached);
+        }
+        misses.incrementAndGet();
+        Load load = new Load();
+        Load running = loads.putIfAbsent(userId, load);
+        if(running != null) {
+            coalesced.incrementAndGet();
+            return copy(await(running));
+        }
+        try {
+            long start = System.nanoTime();
+            UserDto loaded = loader.apply(userId);
+            if(loadTimer != null) {
+                loadTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+            store(userId, load, loaded);
+            load.result.complete(loaded);
+            return copy(loaded);
+        } catch (RuntimeException e) {
+            load.result.completeExceptionally(e);
+            throw e;
+        } finally {
+            loads.remove(userId, load);
+        }
+    }
+
+    public void invalidate(long userId) {
+        synchronized(this) {
+            if(entries.remove(userId) != null) {
+                invalidations.incrementAndGet();
+            }
+            // A load that is still running may have read the old state, so its result must not be stored
+            Load running = loads.remove(userId);
+            if(running != null) {
+                running.stale = true;
+            }
+        }
+    }
+
+    public synchronized void invalidateAll() {
+        entries.clear();
+        loads.values().forEach(load -> load.stale = true);
+        loads.clear();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUserChanged(UserChangedEvent event) {
+        invalidate(event.userId());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onRelationshipChanged(RelationshipChangedEvent event) {
+        invalidate(event.userId());
+        invalidate(event.friendId());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPostUploaded(PostUploadedEvent event) {
+        invalidate(event.userId());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPostDeleted(PostDeletedEvent event) {
+        invalidate(event.userId());
+    }
+
+    // The friend lists of the cached users may contain the deleted user as well
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUserDeleted(UserDeletedEvent event) {
+        synchronized(this) {
+            invalidate(event.userId());
+            Iterator<Entry> iterator = entries.values().iterator();
+            while(iterator.hasNext()) {
+                UserDto user = iterator.next().user;
+                if(user.getFriends() != null && user.getFriends().contains(event.userId())) {
+                    iterator.remove();
+                    invalidations.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("user.cache.gets", hits, AtomicLong::get)
+                .tag("result", "hit")
+                .description("The number of user profiles served from the cache")
+                .register(registry);
+        FunctionCounter.builder("user.cache.gets", misses, AtomicLong::get)
+                .tag("result", "miss")
+                .description("The number of user profile requests that missed the cache")
+                .register(registry);
+        FunctionCounter.builder("user.cache.coalesced", coalesced, AtomicLong::get)
+                .description("The number of misses that waited for the load of another request")
+                .register(registry);
+        FunctionCounter.builder("user.cache.evictions", sizeEvictions, AtomicLong::get)
+                .tag("cause", "size")
+                .description("The number of user profiles evicted from the cache")
+                .register(registry);
+        FunctionCounter.builder("user.cache.evictions", expirations, AtomicLong::get)
+                .tag("cause", "expired")
+                .description("The number of user profiles evicted from the cache")
+                .register(registry);
+        FunctionCounter.builder("user.cache.evictions", invalidations, AtomicLong::get)
+                .tag("cause", "invalidated")
+                .description("The number of user profiles evicted from the cache")
+                .register(registry);
+        Gauge.builder("user.cache.hit.ratio", this, UserCache::getHitRatio)
+                .description("The ratio of the user profile requests served from the cache")
+                .register(registry);
+        Gauge.builder("user.cache.size", this, UserCache::getEntryCount)
+                .description("The number of cached user profiles")
+                .register(registry);
+        loadTimer = Timer.builder("user.cache.loads")
+                .description("The latency of loading a user profile from the database")
+                .register(registry);
+    }
+
+    public double getHitRatio() {
+        long hitCount = hits.get();
+        long total = hitCount + misses.get();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    private synchronized UserDto lookup(long userId) {
+        Entry entry = entries.get(userId);
+        if(entry == null) {
+            return null;
+        }
+        if(entry.expiresAt - System.nanoTime() < 0) {
+            entries.remove(userId);
+            expirations.incrementAndGet();
+            return null;
+        }
+        return entry.user;
+    }
+
+    private synchronized void store(long userId, Load load, UserDto user) {
+        if(load.stale) {
+            return;
+        }
+        entries.put(userId, new Entry(user, System.nanoTime() + ttlNanos));
+        Iterator<Entry> eldest = entries.values().iterator();
+        while(entries.size() > maxSize && eldest.hasNext()) {
+            eldest.next();
+            eldest.remove();
+            sizeEvictions.incrementAndGet();
+        }
+    }
+
+    private static UserDto copy(UserDto user) {
+        PersonalData personalData = user.getPersonalData();
+        return new UserDto(user.getId(), user.getUsername(), user.getEmail(), user.getPassword(), user.getRegistrationTime(),
+                personalData == null ? null : new PersonalData(personalData.getRealName(), personalData.getDateOfBirth(), personalData.getCity()),
+                user.getFriends() == null ? null : new HashSet<>(user.getFriends()), user.getFriendCount(), user.getPostCount());
+    }
+
+    private static UserDto await(Load load) {
+        try {
+            return load.result.join();
+        } catch (CompletionException e) {
+            if(e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private record Entry(UserDto user, long expiresAt) {
+    }
+
+    private static class Load {
+
+        private final CompletableFuture<UserDto> result = new CompletableFuture<>();
+
+        private volatile boolean stale;
+    }
+}
@@ -0,0 +1,76 @@
+package socialnetwork.controllers;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.ExampleObject;
+import io.swagger.v3.oas.annotations.parameters.RequestBody;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.AllArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import socialnetwork.services.ImportService;
+
+import java.io.IOException;
+
+@RestController
+@RequestMapping("/api/import")
+@AllArgsConstructor
+@Tag(name = "Import", description = "Endpoints for importing users and relationships in bulk")
+public class ImportController {
+
+    private ImportService importService;
+
+    @Operation(
+            summary = "Import users",
+            description = "It creates users from a stream of JSON objects, one per line, with the same fields as the registration. " +
+                    "The lines are committed in batches. Rejected lines and the progress after each batch are streamed back as JSON lines."
+    )
+    @RequestBody(content = @Content(
+            mediaType = MediaType.APPLICATION_NDJSON_VALUE,
+            examples = @ExampleObject(value = "{\"username\":\"lifelover\",\"email\":\"springishere@example.com\",\"password\":\"12345678\"}")
+    ))
+    @PostMapping(value = "/users", consumes = MediaType.APPLICATION_NDJSON_VALUE, produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @ApiResponse(responseCode = "200",
+            description = "The lines have been processed, the rejected lines are reported in the response.",
+            content = @Content(
+                    mediaType = MediaType.APPLICATION_NDJSON_VALUE,
+                    examples = @ExampleObject(
+                            value = "{\"line\":2,\"error\":\"Email address is not valid.\"}\n{\"processed\":3,\"imported\":2,\"failed\":1,\"finished\":true}"
+                    )
+            )
+    )
+    public void importUsers(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        importService.importUsers(request.getInputStream(), response.getOutputStream());
+    }
+
+    @Operation(
+            summary = "Import relationships",
+            description = "It creates relationships from a stream of JSON objects holding a userId and a friendId, one per line. " +
+                    "Existing relationships are accepted without change. The lines are committed in batches. " +
+                    "Rejected lines and the progress after each batch are streamed back as JSON lines."
+    )
+    @RequestBody(content = @Content(
+            mediaType = MediaType.APPLICATION_NDJSON_VALUE,
+            examples = @ExampleObject(value = "{\"userId\":1,\"friendId\":2}")
+    ))
+    @PostMapping(value = "/relationships", consumes = MediaType.APPLICATION_NDJSON_VALUE, produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @ApiResponse(responseCode = "200",
+            description = "The lines have been processed, the rejected lines are reported in the response.",
+            content = @Content(
+                    mediaType = MediaType.APPLICATION_NDJSON_VALUE,
+                    examples = @ExampleObject(
+                            value = "{\"line\":2,\"error\":\"User with id: 42 was not found.\"}\n{\"processed\":3,\"imported\":2,\"failed\":1,\"finished\":true}"
+                    )
+            )
+    )
+    public void importRelationships(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        importService.importRelationships(request.getInputStream(), response.getOutputStream());
+    }
+}
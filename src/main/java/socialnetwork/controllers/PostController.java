@@ -7,18 +7,24 @@ import io.swagger.v3.oas.annotations.media.ExampleObject;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
-import jakarta.validation.Valid;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.AllArgsConstructor;
+import org.springframework.core.io.Resource;
 import org.springframework.http.*;
+import org.springframework.validation.BindException;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.util.UriComponentsBuilder;
 import socialnetwork.dtos.CreatePostCommand;
 import socialnetwork.dtos.PostDataDto;
+import socialnetwork.dtos.PostPageDto;
 import socialnetwork.services.PostService;
 import socialnetwork.dtos.ContentDto;
+import socialnetwork.utils.MultipartPostReader;
 
 import java.net.URI;
-import java.util.List;
+import java.time.Duration;
+import java.time.ZoneId;
 
 @RestController
 @RequestMapping("/api/posts")
@@ -26,11 +32,19 @@ import java.util.List;
 @Tag(name = "Post", description = "Endpoints for the operations with posts")
 public class PostController {
 
+    private static final CacheControl CONTENT_CACHE_CONTROL = CacheControl.maxAge(Duration.ofDays(365)).cachePublic().immutable();
+
     private PostService postService;
 
+    private MultipartPostReader postReader;
+
     @Operation(
             summary = "Create post",
-            description = "This endpoint is for uploading new posts. The title and the file content are required. Max. 2 MB size .jpeg/.jpg or .png images are allowed.\""
+            description = "This endpoint is for uploading new posts. The title and the file content are required. Max. 2 MB size .jpeg/.jpg or .png images are allowed. The file is streamed to the storage while the request is being read.",
+            requestBody = @io.swagger.v3.oas.annotations.parameters.RequestBody(
+                    description = "The contents of the new post",
+                    content = @Content(mediaType = MediaType.MULTIPART_FORM_DATA_VALUE, schema = @Schema(implementation = CreatePostCommand.class))
+            )
     )
     @PostMapping(consumes = MediaType.MULTIPART_FORM_DATA_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
     @ApiResponse(responseCode = "201", description = "A new post has been created with valid data and successfully added to user.")
@@ -64,18 +78,20 @@ public class PostController {
                     )
             )
     )
-    public ResponseEntity<PostDataDto> createPost(@Parameter(description = "The ID of the user who the new post belongs to") @RequestParam long userId, @Parameter(description = "The contents of the new post") @Valid @ModelAttribute CreatePostCommand command, UriComponentsBuilder builder) {
-        PostDataDto dto =  postService.uploadPost(userId, command);
+    public ResponseEntity<PostDataDto> createPost(@Parameter(description = "The ID of the user who the new post belongs to") @RequestParam long userId, HttpServletRequest request, UriComponentsBuilder builder) throws BindException {
+        PostDataDto dto = postReader.read(request, command -> postService.uploadPost(userId, command));
         URI uri = builder.path("/api/posts/{postId}").buildAndExpand(dto.getId()).toUri();
         return ResponseEntity.created(uri).body(dto);
     }
 
     @Operation(
             summary = "Load post content",
-            description = "It sends back the uploaded image of a given post with inline content disposition."
+            description = "It sends back the uploaded image of a given post with inline content disposition. The response carries a strong ETag and can be cached forever, because the content of a post never changes. Conditional (If-None-Match, If-Modified-Since) and byte-range requests are supported. With the 'size' parameter a pre-rendered thumbnail is sent back, or the original image until the thumbnail is generated."
     )
     @GetMapping(value = "/{postId}/content", produces = {MediaType.IMAGE_JPEG_VALUE, MediaType.IMAGE_PNG_VALUE})
     @ApiResponse(responseCode = "200", description = "The content was successfully sent back in the response.")
+    @ApiResponse(responseCode = "206", description = "The requested byte ranges of the content were sent back in the response.")
+    @ApiResponse(responseCode = "304", description = "The content hasn't changed since the client has cached it.", content = @Content)
     @ApiResponse(responseCode = "404",
             description = "The post with the given ID doesn't exist.",
             content = @Content(
@@ -86,17 +102,35 @@ public class PostController {
                     )
             )
     )
-    public ResponseEntity<byte[]> loadPostContent(@Parameter(description = "The ID of the post") @PathVariable long postId) {
-        ContentDto dto = postService.downloadContent(postId);
+    @ApiResponse(responseCode = "406",
+            description = "The requested thumbnail size doesn't exist.",
+            content = @Content(
+                    mediaType = MediaType.APPLICATION_PROBLEM_JSON_VALUE,
+                    schema = @Schema(implementation = ProblemDetail.class),
+                    examples = @ExampleObject(
+                            value = "{\"type\":\"socialnetwork/invalid-arguments\",\"title\":\"Not Acceptable\",\"status\":406,\"detail\":\"The thumbnail size 'huge' is unknown. Available sizes: small, medium.\",\"instance\":\"/api/posts/42/content\"}"
+                    )
+            )
+    )
+    public ResponseEntity<Resource> loadPostContent(@Parameter(description = "The ID of the post") @PathVariable long postId,
+                                                    @Parameter(description = "The name of a pre-rendered thumbnail size, e.g. small or medium") @RequestParam(required = false) String size,
+                                                    WebRequest request) {
+        ContentDto dto = postService.getContentOfPost(postId, size);
+        CacheControl cacheControl = dto.isFallback() ? CacheControl.noCache() : CONTENT_CACHE_CONTROL;
+        long lastModified = dto.isFallback() ? -1 : dto.getPostedOn().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        if(request.checkNotModified("\"" + dto.getContentHash() + "\"", lastModified)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).cacheControl(cacheControl).build();
+        }
         HttpHeaders headers = new HttpHeaders();
         headers.setContentDisposition(ContentDisposition.inline().filename(dto.getFilename()).build());
         headers.setContentType(MediaType.valueOf(dto.getMimeType()));
-        return ResponseEntity.ok().headers(headers).body(dto.getContent());
+        headers.setCacheControl(cacheControl);
+        return ResponseEntity.ok().headers(headers).body(postService.loadContent(dto.getContentHash()));
     }
 
     @Operation(
             summary = "Listing posts of friends",
-            description = "The server lists the posts of a given user's friends as a result of a GET request. The posts are sent back in the response ordered by the upload time descending."
+            description = "The server lists the posts of a given user's friends as a result of a GET request. The posts are sent back in pages ordered by the upload time descending. The next page can be requested with the cursor returned in the 'next' field."
     )
     @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
     @ApiResponse(responseCode = "200", description = "The requested posts were listed successfully.")
@@ -110,8 +144,20 @@ public class PostController {
                     )
             )
     )
-    public List<PostDataDto> listOrderedPostsOfFriends(@Parameter(description = "The ID of the user whose friend's posts are requested") @RequestParam long friendsOf) {
-        return postService.listOrderedPostsOfFriends(friendsOf);
+    @ApiResponse(responseCode = "406",
+            description = "The page cursor is invalid.",
+            content = @Content(
+                    mediaType = MediaType.APPLICATION_PROBLEM_JSON_VALUE,
+                    schema = @Schema(implementation = ProblemDetail.class),
+                    examples = @ExampleObject(
+                            value = "{\"type\":\"socialnetwork/invalid-arguments\",\"title\":\"Not Acceptable\",\"status\":406,\"detail\":\"The page cursor 'abc' is invalid.\",\"instance\":\"/api/posts\"}"
+                    )
+            )
+    )
+    public PostPageDto listOrderedPostsOfFriends(@Parameter(description = "The ID of the user whose friend's posts are requested") @RequestParam long friendsOf,
+                                                 @Parameter(description = "The maximum number of posts in the page (1-100)") @RequestParam(defaultValue = "20") int limit,
+                                                 @Parameter(description = "The cursor of the requested page returned by the previous page") @RequestParam(required = false) String next) {
+        return postService.listOrderedPostsOfFriends(friendsOf, limit, next);
     }
 
     @Operation(
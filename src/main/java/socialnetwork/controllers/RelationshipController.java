@@ -15,9 +15,14 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.util.UriComponentsBuilder;
 import socialnetwork.services.RelationshipService;
+import socialnetwork.dtos.DistanceDto;
+import socialnetwork.dtos.FriendPageDto;
+import socialnetwork.dtos.MutualFriendsDto;
 import socialnetwork.dtos.RelationshipDto;
+import socialnetwork.dtos.SuggestionDto;
 
 import java.net.URI;
+import java.util.List;
 
 @RestController
 @RequestMapping("/api/users")
@@ -82,7 +87,7 @@ public class RelationshipController {
 
     @Operation(
             summary = "Listing relationships",
-            description = "It lists the relationships of a given user in the response."
+            description = "It lists the friends of a given user in pages ordered by their ID. Each friend is sent back with the ID, the username and the city only. The next page can be requested with the value returned in the 'next' field."
     )
     @GetMapping(value = "/{userId}/friends", produces = MediaType.APPLICATION_JSON_VALUE)
     @ApiResponse(responseCode = "200", description = "The requested relationships are listed successfully.")
@@ -96,7 +101,103 @@ public class RelationshipController {
                     )
             )
     )
-    public RelationshipDto listFriendsOfUser(@Parameter(description = "The ID of the user whose relationships to be listed") @PathVariable long userId) {
+    public FriendPageDto listFriendsOfUser(@Parameter(description = "The ID of the user whose relationships to be listed") @PathVariable long userId,
+                                           @Parameter(description = "The maximum number of friends in the page (1-1000)") @RequestParam(defaultValue = "100") int limit,
+                                           @Parameter(description = "The value of the 'next' field of the previous page") @RequestParam(required = false) Long after) {
+        return relationshipService.listFriendSummaries(userId, limit, after);
+    }
+
+    @Operation(
+            summary = "Listing relationships with full profiles",
+            description = "It lists all friends of a given user at once, each with the account data, the personal data and the ID's of their friends. It is sent back only if the 'full=true' parameter is given."
+    )
+    @GetMapping(value = "/{userId}/friends", params = "full=true", produces = MediaType.APPLICATION_JSON_VALUE)
+    @ApiResponse(responseCode = "200", description = "The requested relationships are listed successfully.")
+    @ApiResponse(responseCode = "404",
+            description = "The user doesn't exist.",
+            content = @Content(
+                    mediaType = MediaType.APPLICATION_PROBLEM_JSON_VALUE,
+                    schema = @Schema(implementation = ProblemDetail.class),
+                    examples = @ExampleObject(
+                            value = "{\"type\":\"socialnetwork/not-found\",\"title\":\"Not Found\",\"status\":404,\"detail\":\"User with id: 42 was not found.\",\"instance\":\"/api/users/42/friends\"}"
+                    )
+            )
+    )
+    public RelationshipDto listFullFriendsOfUser(@Parameter(description = "The ID of the user whose relationships to be listed") @PathVariable long userId) {
         return relationshipService.listFriendsOfUser(userId);
     }
+
+    @Operation(
+            summary = "Listing mutual friends",
+            description = "It lists the ID's of the friends shared by two users in the response."
+    )
+    @GetMapping(value = "/{userId}/friends/mutual/{otherId}", produces = MediaType.APPLICATION_JSON_VALUE)
+    @ApiResponse(responseCode = "200", description = "The mutual friends are listed successfully.")
+    @ApiResponse(responseCode = "404",
+            description = "One or both of the users do not exist.",
+            content = @Content(
+                    mediaType = MediaType.APPLICATION_PROBLEM_JSON_VALUE,
+                    schema = @Schema(implementation = ProblemDetail.class),
+                    examples = @ExampleObject(
+                            value = "{\"type\":\"socialnetwork/not-found\",\"title\":\"Not Found\",\"status\":404,\"detail\":\"User with id: 42 was not found.\",\"instance\":\"/api/users/1/friends/mutual/42\"}"
+                    )
+            )
+    )
+    public MutualFriendsDto listMutualFriends(@Parameter(description = "The ID of the user") @PathVariable long userId, @Parameter(description = "The ID of the other user") @PathVariable long otherId) {
+        return relationshipService.listMutualFriends(userId, otherId);
+    }
+
+    @Operation(
+            summary = "Suggesting friends",
+            description = "It suggests friends of friends who aren't yet friends of the given user, ranked by the number of mutual friends descending."
+    )
+    @GetMapping(value = "/{userId}/suggestions", produces = MediaType.APPLICATION_JSON_VALUE)
+    @ApiResponse(responseCode = "200", description = "The suggestions are listed successfully.")
+    @ApiResponse(responseCode = "404",
+            description = "The user doesn't exist.",
+            content = @Content(
+                    mediaType = MediaType.APPLICATION_PROBLEM_JSON_VALUE,
+                    schema = @Schema(implementation = ProblemDetail.class),
+                    examples = @ExampleObject(
+                            value = "{\"type\":\"socialnetwork/not-found\",\"title\":\"Not Found\",\"status\":404,\"detail\":\"User with id: 42 was not found.\",\"instance\":\"/api/users/42/suggestions\"}"
+                    )
+            )
+    )
+    public List<SuggestionDto> suggestFriends(@Parameter(description = "The ID of the user") @PathVariable long userId,
+                                              @Parameter(description = "The maximum number of suggestions (1-100)") @RequestParam(defaultValue = "10") int limit) {
+        return relationshipService.suggestFriends(userId, limit);
+    }
+
+    @Operation(
+            summary = "Finding the distance between two users",
+            description = "It returns the number of hops and one shortest chain of friendships between two users. " +
+                    "The distance is null if the users aren't connected within the depth limit."
+    )
+    @GetMapping(value = "/{userId}/distance/{otherId}", produces = MediaType.APPLICATION_JSON_VALUE)
+    @ApiResponse(responseCode = "200", description = "The distance is determined successfully.")
+    @ApiResponse(responseCode = "404",
+            description = "One or both of the users do not exist.",
+            content = @Content(
+                    mediaType = MediaType.APPLICATION_PROBLEM_JSON_VALUE,
+                    schema = @Schema(implementation = ProblemDetail.class),
+                    examples = @ExampleObject(
+                            value = "{\"type\":\"socialnetwork/not-found\",\"title\":\"Not Found\",\"status\":404,\"detail\":\"User with id: 42 was not found.\",\"instance\":\"/api/users/1/distance/42\"}"
+                    )
+            )
+    )
+    @ApiResponse(responseCode = "503",
+            description = "The search exceeded its time limit.",
+            content = @Content(
+                    mediaType = MediaType.APPLICATION_PROBLEM_JSON_VALUE,
+                    schema = @Schema(implementation = ProblemDetail.class),
+                    examples = @ExampleObject(
+                            value = "{\"type\":\"socialnetwork/search-budget-exceeded\",\"title\":\"Service Unavailable\",\"status\":503,\"detail\":\"The search exceeded its time limit, the distance can not be determined.\",\"instance\":\"/api/users/1/distance/42\"}"
+                    )
+            )
+    )
+    public DistanceDto findDistance(@Parameter(description = "The ID of the user") @PathVariable long userId,
+                                    @Parameter(description = "The ID of the other user") @PathVariable long otherId,
+                                    @Parameter(description = "The maximum number of hops to search, capped by the configured limit") @RequestParam(required = false) Integer maxDepth) {
+        return relationshipService.findDistance(userId, otherId, maxDepth);
+    }
 }
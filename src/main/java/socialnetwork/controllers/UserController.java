@@ -9,13 +9,16 @@ import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import lombok.AllArgsConstructor;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ProblemDetail;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 import org.springframework.web.util.UriComponentsBuilder;
 import socialnetwork.models.RequestParameter;
+import socialnetwork.services.UserSearchResult;
 import socialnetwork.services.UserService;
 import socialnetwork.dtos.CreateUserCommand;
 import socialnetwork.dtos.ModifyUserCommand;
@@ -30,6 +33,8 @@ import java.util.List;
 @Tag(name = "User", description = "Endpoints for the operations with users")
 public class UserController {
 
+    private static final String TOTAL_COUNT_HEADER = "X-Total-Count";
+
     private UserService userService;
 
     @Operation(
@@ -76,12 +81,26 @@ public class UserController {
 
     @Operation(
             summary = "Search users",
-            description = "This endpoint allows searching among the registered users by 5 parameters: username substring, email address substring, registration after a given time, real name substring, and exact city name."
+            description = "This endpoint allows searching among the registered users by 5 parameters: username substring, email address substring, registration after a given time, real name substring, and exact city name. " +
+                    "The users are returned ordered by ID in pages, the next page is linked in the 'Link' header. On request the number of all matching users is returned in the 'X-Total-Count' header."
     )
     @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
     @ApiResponse(responseCode = "200", description = "The response has sent back correctly.")
-    public List<UserDto> findUsersByParams(@Parameter(description = "Optional query string parameters for the search") RequestParameter params) {
-        return userService.findUsersByParams(params);
+    public ResponseEntity<List<UserDto>> findUsersByParams(@Parameter(description = "Optional query string parameters for the search") RequestParameter params,
+                                                           @Parameter(description = "The maximum number of users in the page (1-1000)") @RequestParam(defaultValue = "100") int limit,
+                                                           @Parameter(description = "The ID of the last user of the previous page") @RequestParam(required = false) Long after,
+                                                           @Parameter(description = "Whether to count all matching users") @RequestParam(defaultValue = "false") boolean count,
+                                                           @Parameter(description = "Whether to include the ID's of the related users") @RequestParam(defaultValue = "true") boolean friends) {
+        UserSearchResult result = userService.findUsersByParams(params, limit, after, count, friends);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if(result.total() != null) {
+            response.header(TOTAL_COUNT_HEADER, String.valueOf(result.total()));
+        }
+        if(result.next() != null) {
+            URI next = ServletUriComponentsBuilder.fromCurrentRequest().replaceQueryParam("after", result.next()).build().toUri();
+            response.header(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"");
+        }
+        return response.body(result.users());
     }
 
     @Operation(
@@ -0,0 +1,72 @@
+package socialnetwork.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.resource.jdbc.spi.PhysicalConnectionHandlingMode;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Configuration
+public class DataSourceConfig {
+
+    @Bean
+    public ReplicaRoutingDataSource dataSource(DataSourceProperties properties, ReplicaProperties replicaProperties, Environment environment) {
+        HikariDataSource primary = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        Binder.get(environment).bind("spring.datasource.hikari", Bindable.ofInstance(primary));
+        primary.setPoolName(ReplicaRoutingDataSource.PRIMARY);
+        List<HikariDataSource> replicas = new ArrayList<>();
+        for(ReplicaProperties.Replica replica : replicaProperties.getReplicas()) {
+            HikariDataSource dataSource = new HikariDataSource();
+            dataSource.setPoolName("replica-" + (replicas.size() + 1));
+            dataSource.setJdbcUrl(replica.getUrl());
+            dataSource.setUsername(replica.getUsername());
+            dataSource.setPassword(replica.getPassword());
+            dataSource.setReadOnly(true);
+            replicas.add(dataSource);
+        }
+        return new ReplicaRoutingDataSource(primary, replicas, replicaProperties.getMaxLag(), replicaProperties.getLagCheckInterval());
+    }
+
+    @Configuration
+    @ConditionalOnProperty("socialnetwork.datasource.replicas[0].url")
+    static class ReplicaConfig {
+
+        // A session opened for the whole request would keep the connection of its first transaction
+        @Bean
+        public HibernatePropertiesCustomizer connectionReleaseCustomizer() {
+            return properties -> properties.put(AvailableSettings.CONNECTION_HANDLING,
+                    PhysicalConnectionHandlingMode.DELAYED_ACQUISITION_AND_RELEASE_AFTER_TRANSACTION);
+        }
+
+        // A replica is used until its lag exceeds the limit, which is only checked periodically
+        @Bean
+        public HibernatePropertiesCustomizer replicaAwareRegionFactoryCustomizer(ReplicaProperties replicaProperties) {
+            return properties -> properties.put(AvailableSettings.CACHE_REGION_FACTORY,
+                    new ReplicaAwareRegionFactory(replicaProperties.getMaxLag().plus(replicaProperties.getLagCheckInterval())));
+        }
+
+        @Bean
+        public static BeanPostProcessor replicaAwareJpaDialectInstaller() {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessBeforeInitialization(Object bean, String beanName) {
+                    if(bean instanceof LocalContainerEntityManagerFactoryBean factoryBean) {
+                        factoryBean.setJpaDialect(new ReplicaAwareJpaDialect());
+                    }
+                    return bean;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package socialnetwork.datasource;
+
+import jakarta.persistence.CacheStoreMode;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceException;
+import org.hibernate.jpa.SpecHints;
+import org.springframework.orm.jpa.vendor.HibernateJpaDialect;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionException;
+
+import java.sql.SQLException;
+
+// The entries loaded from a lagging replica could outlive the eviction of a newer write on the primary, so read-only
+// transactions only read the second-level cache, the entities are put by the read-write transactions. The store mode
+// is set on the entity manager, the lookups by id take their cache mode from it instead of the session. The query
+// cache stores the results of a cacheable query even then, ReplicaAwareRegionFactory dates them back by the allowed lag.
+public class ReplicaAwareJpaDialect extends HibernateJpaDialect {
+
+    @Override
+    public Object beginTransaction(EntityManager entityManager, TransactionDefinition definition)
+            throws PersistenceException, SQLException, TransactionException {
+        Object transactionData = super.beginTransaction(entityManager, definition);
+        if(!definition.isReadOnly()) {
+            return transactionData;
+        }
+        Object previousMode = entityManager.getProperties().get(SpecHints.HINT_SPEC_CACHE_STORE_MODE);
+        entityManager.setProperty(SpecHints.HINT_SPEC_CACHE_STORE_MODE, CacheStoreMode.BYPASS);
+        return new ReadOnlyTransactionData(transactionData, entityManager,
+                previousMode instanceof CacheStoreMode mode ? mode : CacheStoreMode.USE);
+    }
+
+    // The entity manager may outlive the transaction when it is opened for the whole request
+    @Override
+    public void cleanupTransaction(Object transactionData) {
+        if(transactionData instanceof ReadOnlyTransactionData readOnly) {
+            readOnly.entityManager().setProperty(SpecHints.HINT_SPEC_CACHE_STORE_MODE, readOnly.previousMode());
+            super.cleanupTransaction(readOnly.transactionData());
+        } else {
+            super.cleanupTransaction(transactionData);
+        }
+    }
+
+    private record ReadOnlyTransactionData(Object transactionData, EntityManager entityManager, CacheStoreMode previousMode) {
+    }
+}
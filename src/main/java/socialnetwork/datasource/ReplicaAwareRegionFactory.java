@@ -0,0 +1,37 @@
+package socialnetwork.datasource;
+
+import org.hibernate.cache.jcache.internal.JCacheRegionFactory;
+import org.hibernate.cache.spi.CacheTransactionSynchronization;
+import org.hibernate.cache.spi.StandardCacheTransactionSynchronization;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+// A cached query result is stale when one of its tables has changed after the start of the transaction that put it.
+// The replicas may be behind by the allowed lag, so the results of the read-only transactions are dated back by it:
+// a write on the primary that the replica may have missed makes them stale, the older results can be served. The
+// cached entities are only read by a transaction started after they were put, so the recent ones are skipped as well.
+public class ReplicaAwareRegionFactory extends JCacheRegionFactory {
+
+    private final Duration lag;
+
+    public ReplicaAwareRegionFactory(Duration lag) {
+        this.lag = lag;
+    }
+
+    @Override
+    public CacheTransactionSynchronization createTransactionContext(SharedSessionContractImplementor session) {
+        return new StandardCacheTransactionSynchronization(this) {
+            @Override
+            public long getCurrentTransactionStartTimestamp() {
+                long timestamp = super.getCurrentTransactionStartTimestamp();
+                if(!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+                    return timestamp;
+                }
+                return timestamp - lag.toMillis() * getTimeout() / TimeUnit.MINUTES.toMillis(1);
+            }
+        };
+    }
+}
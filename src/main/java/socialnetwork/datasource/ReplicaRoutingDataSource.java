@@ -0,0 +1,204 @@
+package socialnetwork.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Sends read-only transactions to a replica and everything else to the primary. The transaction managers take the
+// connection before the read-only flag of the transaction is set, so the pool is only chosen when the first statement
+// is run. The lag of a replica is measured on the change log: it is the age of the oldest primary position the replica
+// has not reached yet. A replica lagging more than the limit, or one that can not be reached, is skipped until it
+// catches up.
+@Slf4j
+public class ReplicaRoutingDataSource extends LazyConnectionDataSourceProxy implements MeterBinder, SmartInitializingSingleton, DisposableBean {
+
+    static final String PRIMARY = "primary";
+
+    private static final String POSITION = "SELECT COALESCE(MAX(id), 0) FROM change_log";
+
+    private final Pool primary;
+
+    private final List<Pool> replicas;
+
+    private final long maxLagNanos;
+
+    private final Deque<Sample> samples = new ArrayDeque<>();
+
+    private final AtomicInteger next = new AtomicInteger();
+
+    private final AtomicLong fallbacks = new AtomicLong();
+
+    private final ScheduledExecutorService executor;
+
+    private final Duration lagCheckInterval;
+
+    private volatile boolean checkFailing;
+
+    public ReplicaRoutingDataSource(HikariDataSource primary, List<HikariDataSource> replicas, Duration maxLag, Duration lagCheckInterval) {
+        this.primary = new Pool(primary);
+        this.replicas = replicas.stream().map(Pool::new).toList();
+        this.maxLagNanos = maxLag.toNanos();
+        this.lagCheckInterval = lagCheckInterval;
+        this.executor = replicas.isEmpty() ? null : Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("replica-lag-"));
+        Router router = new Router();
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        replicas.forEach(replica -> targets.put(replica.getPoolName(), replica));
+        router.setTargetDataSources(targets);
+        router.setDefaultTargetDataSource(primary);
+        router.afterPropertiesSet();
+        setTargetDataSource(router);
+    }
+
+    // The change log exists once the migrations have run, until then every read goes to the primary
+    @Override
+    public void afterSingletonsInstantiated() {
+        if(executor != null) {
+            executor.scheduleWithFixedDelay(this::checkLagSafely, 0, lagCheckInterval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private Object route() {
+        if(TransactionSynchronizationManager.isCurrentTransactionReadOnly() && !replicas.isEmpty()) {
+            for(int i = 0; i < replicas.size(); i++) {
+                Pool replica = replicas.get(Math.floorMod(next.getAndIncrement(), replicas.size()));
+                if(replica.lagNanos <= maxLagNanos) {
+                    replica.routed.incrementAndGet();
+                    return replica.name;
+                }
+            }
+            fallbacks.incrementAndGet();
+        }
+        primary.routed.incrementAndGet();
+        return PRIMARY;
+    }
+
+    private synchronized void checkLag() {
+        long now = System.nanoTime();
+        samples.addLast(new Sample(new JdbcTemplate(primary.dataSource).queryForObject(POSITION, Long.class), now));
+        // Older samples are only needed to tell how far beyond the limit a replica is
+        while(samples.size() > 1 && now - samples.peekFirst().time() > 2 * maxLagNanos) {
+            samples.removeFirst();
+        }
+        for(Pool replica : replicas) {
+            try {
+                long position = new JdbcTemplate(replica.dataSource).queryForObject(POSITION, Long.class);
+                replica.lagNanos = lagOf(position, now);
+            } catch (RuntimeException e) {
+                if(replica.lagNanos != Long.MAX_VALUE) {
+                    log.warn("Replica {} can not be reached, reads are sent to the other pools.", replica.name, e);
+                }
+                replica.lagNanos = Long.MAX_VALUE;
+            }
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        bindPool(registry, primary);
+        for(Pool replica : replicas) {
+            bindPool(registry, replica);
+            Gauge.builder("datasource.replica.lag", replica, pool -> pool.lagNanos == Long.MAX_VALUE ? Double.NaN : pool.lagNanos / 1e9)
+                    .tag("pool", replica.name)
+                    .baseUnit("seconds")
+                    .description("How far the replica is behind the primary, NaN if it can not be reached")
+                    .register(registry);
+        }
+        FunctionCounter.builder("datasource.routing.fallbacks", fallbacks, AtomicLong::get)
+                .description("The number of read-only transactions sent to the primary, because no replica was usable")
+                .register(registry);
+    }
+
+    @Override
+    public void destroy() {
+        if(executor != null) {
+            executor.shutdownNow();
+        }
+        replicas.forEach(replica -> replica.dataSource.close());
+        primary.dataSource.close();
+    }
+
+    private void bindPool(MeterRegistry registry, Pool pool) {
+        // The metrics of the pool the routing resolves to by default may have been bound by Spring Boot already
+        if(pool.dataSource.getMetricRegistry() == null && pool.dataSource.getMetricsTrackerFactory() == null) {
+            pool.dataSource.setMetricRegistry(registry);
+        }
+        FunctionCounter.builder("datasource.routing", pool.routed, AtomicLong::get)
+                .tag("pool", pool.name)
+                .description("The number of connections routed to the pool")
+                .register(registry);
+    }
+
+    private long lagOf(long position, long now) {
+        for(Sample sample : samples) {
+            if(sample.position() > position) {
+                return now - sample.time();
+            }
+        }
+        return 0;
+    }
+
+    private void checkLagSafely() {
+        try {
+            checkLag();
+            checkFailing = false;
+        } catch (RuntimeException e) {
+            // Without the position of the primary the lag is unknown, so the replicas are not used
+            replicas.forEach(replica -> replica.lagNanos = Long.MAX_VALUE);
+            if(!checkFailing) {
+                log.warn("The replication lag could not be checked.", e);
+            }
+            checkFailing = true;
+        }
+    }
+
+    private class Router extends AbstractRoutingDataSource {
+
+        @Override
+        protected Object determineCurrentLookupKey() {
+            return route();
+        }
+    }
+
+    private record Sample(long position, long time) {
+    }
+
+    private static class Pool {
+
+        private final String name;
+
+        private final HikariDataSource dataSource;
+
+        private final AtomicLong routed = new AtomicLong();
+
+        // Unknown until the first check
+        private volatile long lagNanos = Long.MAX_VALUE;
+
+        Pool(HikariDataSource dataSource) {
+            this.name = dataSource.getPoolName();
+            this.dataSource = dataSource;
+        }
+    }
+}
@@ -6,6 +6,8 @@ import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 
+import java.time.LocalDateTime;
+
 @Getter
 @Setter
 @NoArgsConstructor
@@ -18,6 +20,12 @@ public class ContentDto {
     @Schema(description = "The MIME type of the image", example = "image/png")
     private String mimeType;
 
-    @Schema(description = "The binary content")
-    private byte[] content;
+    @Schema(description = "The SHA-256 hash of the binary content", example = "9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08")
+    private String contentHash;
+
+    @Schema(description = "The date and time of the upload", example = "2023-04-12T10:15:30")
+    private LocalDateTime postedOn;
+
+    @Schema(description = "Whether the original image is served, because the requested thumbnail isn't ready yet")
+    private boolean fallback;
 }
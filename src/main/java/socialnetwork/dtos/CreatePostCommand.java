@@ -7,7 +7,6 @@ import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
-import org.springframework.web.multipart.MultipartFile;
 import socialnetwork.exceptions.ValidFile;
 
 @Getter
@@ -25,6 +24,6 @@ public class CreatePostCommand {
 
     @NotNull(message = "A photo must be uploaded with the post.")
     @ValidFile
-    @Schema(description = "Required image file for the post in JPEG or PNG format")
-    private MultipartFile file;
+    @Schema(description = "Required image file for the post in JPEG or PNG format", type = "string", format = "binary")
+    private UploadedFile file;
 }
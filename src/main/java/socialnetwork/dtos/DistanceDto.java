@@ -0,0 +1,28 @@
+package socialnetwork.dtos;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+public class DistanceDto {
+
+    @Schema(description = "The ID of the user", example = "1")
+    private long userId;
+
+    @Schema(description = "The ID of the other user", example = "4")
+    private long otherId;
+
+    @Schema(description = "The number of hops between the users, or null if they aren't connected within the depth limit", example = "3")
+    private Integer distance;
+
+    @Schema(description = "The ID's of the users along one shortest path, including both ends", example = "[1, 2, 3, 4]")
+    private List<Long> path;
+}
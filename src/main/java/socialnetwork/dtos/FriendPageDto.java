@@ -0,0 +1,25 @@
+package socialnetwork.dtos;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class FriendPageDto {
+
+    @Schema(description = "The ID of the user who the relationships belong to", example = "1")
+    private long userId;
+
+    @Schema(description = "The friends of the page ordered by their ID")
+    private List<FriendSummaryDto> friends;
+
+    @Schema(description = "The value of the 'after' parameter for the next page, or null if this is the last page", example = "118")
+    private Long next;
+}
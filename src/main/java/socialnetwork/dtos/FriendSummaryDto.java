@@ -0,0 +1,23 @@
+package socialnetwork.dtos;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+public class FriendSummaryDto {
+
+    @Schema(description = "The ID of the friend", example = "2")
+    private long id;
+
+    @Schema(description = "The username of the friend", example = "muddyboots")
+    private String username;
+
+    @Schema(description = "The city of the friend, if it is given", example = "Budapest")
+    private String city;
+}
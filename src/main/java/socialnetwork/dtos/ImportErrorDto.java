@@ -0,0 +1,20 @@
+package socialnetwork.dtos;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+public class ImportErrorDto {
+
+    @Schema(description = "The number of the rejected line in the request", example = "12")
+    private long line;
+
+    @Schema(description = "The reason of the rejection", example = "Email address is not valid.")
+    private String error;
+}
@@ -0,0 +1,26 @@
+package socialnetwork.dtos;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+public class ImportProgressDto {
+
+    @Schema(description = "The number of lines processed so far", example = "2000")
+    private long processed;
+
+    @Schema(description = "The number of lines committed so far", example = "1998")
+    private long imported;
+
+    @Schema(description = "The number of rejected lines so far", example = "2")
+    private long failed;
+
+    @Schema(description = "Whether the whole request has been processed", example = "false")
+    private boolean finished;
+}
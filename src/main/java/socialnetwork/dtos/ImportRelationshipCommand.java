@@ -0,0 +1,23 @@
+package socialnetwork.dtos;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+public class ImportRelationshipCommand {
+
+    @NotNull(message = "The ID of the user must not be null!")
+    @Schema(description = "The ID of the user", example = "1")
+    private Long userId;
+
+    @NotNull(message = "The ID of the friend must not be null!")
+    @Schema(description = "The ID of the friend", example = "2")
+    private Long friendId;
+}
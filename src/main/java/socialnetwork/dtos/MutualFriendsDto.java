@@ -0,0 +1,28 @@
+package socialnetwork.dtos;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+public class MutualFriendsDto {
+
+    @Schema(description = "The ID of the user", example = "1")
+    private long userId;
+
+    @Schema(description = "The ID of the other user", example = "2")
+    private long otherId;
+
+    @Schema(description = "The number of mutual friends", example = "2")
+    private int count;
+
+    @Schema(description = "The ID's of the mutual friends in ascending order", example = "[3, 4]")
+    private List<Long> friends;
+}
@@ -26,6 +26,12 @@ public class PostDataDto {
     @Schema(description = "The name of the file", example = "example.png")
     private String filename;
 
+    @Schema(description = "The width of the image in pixels", example = "1024")
+    private Integer width;
+
+    @Schema(description = "The height of the image in pixels", example = "768")
+    private Integer height;
+
     @Schema(description = "The posting time", example = "2023-03-23T15:30:00")
     private LocalDateTime postedOn;
 
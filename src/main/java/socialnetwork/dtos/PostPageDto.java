@@ -0,0 +1,22 @@
+package socialnetwork.dtos;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class PostPageDto {
+
+    @Schema(description = "The posts of the page ordered by the posting time descending")
+    private List<PostDataDto> posts;
+
+    @Schema(description = "Opaque cursor of the next page, or null if this is the last page", example = "MjAyMy0wNC0xMFQxMDoxNTowMF8xMg")
+    private String next;
+}
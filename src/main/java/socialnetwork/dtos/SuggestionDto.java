@@ -0,0 +1,23 @@
+package socialnetwork.dtos;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+public class SuggestionDto {
+
+    @Schema(description = "The ID of the suggested user", example = "5")
+    private long userId;
+
+    @Schema(description = "The username of the suggested user", example = "littlejohn20")
+    private String username;
+
+    @Schema(description = "The number of friends shared with the suggested user", example = "3")
+    private int mutualFriends;
+}
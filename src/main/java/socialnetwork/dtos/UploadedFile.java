@@ -0,0 +1,20 @@
+package socialnetwork.dtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import socialnetwork.storage.StagedBlob;
+
+@Getter
+@AllArgsConstructor
+public class UploadedFile {
+
+    private String originalFilename;
+
+    private String contentType;
+
+    private StagedBlob content;
+
+    private Integer width;
+
+    private Integer height;
+}
@@ -36,4 +36,18 @@ public class UserDto {
 
     @Schema(description = "The ID's of the related users", example = "[1, 3, 4]")
     private Set<Long> friends;
+
+    @Schema(description = "The number of the related users", example = "3")
+    private int friendCount;
+
+    @Schema(description = "The number of the posts of the user", example = "12")
+    private int postCount;
+
+    public UserDto(long id, String username, String email, String password, LocalDateTime registrationTime, PersonalData personalData) {
+        this(id, username, email, password, registrationTime, personalData, null, 0, 0);
+    }
+
+    public UserDto(long id, String username, String email, String password, LocalDateTime registrationTime, PersonalData personalData, int friendCount, int postCount) {
+        this(id, username, email, password, registrationTime, personalData, null, friendCount, postCount);
+    }
 }
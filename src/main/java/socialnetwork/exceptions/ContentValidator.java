@@ -2,16 +2,42 @@ package socialnetwork.exceptions;
 
 import jakarta.validation.ConstraintValidator;
 import jakarta.validation.ConstraintValidatorContext;
-import org.springframework.web.multipart.MultipartFile;
+import org.springframework.beans.factory.annotation.Value;
+import socialnetwork.dtos.UploadedFile;
 
-public class ContentValidator implements ConstraintValidator<ValidFile, MultipartFile> {
+public class ContentValidator implements ConstraintValidator<ValidFile, UploadedFile> {
+
+    private final long maxPixels;
+
+    public ContentValidator(@Value("${socialnetwork.upload.max-pixels}") long maxPixels) {
+        this.maxPixels = maxPixels;
+    }
 
     @Override
-    public boolean isValid(MultipartFile value, ConstraintValidatorContext context) {
-        String filename = value.getOriginalFilename().toLowerCase();
-        String mimeType = value.getContentType();
-        return (mimeType.equals("image/jpeg") && (filename.endsWith(".jpg") || filename.endsWith(".jpeg"))) ||
-                (mimeType.equals("image/png") && filename.endsWith(".png"));
+    public boolean isValid(UploadedFile value, ConstraintValidatorContext context) {
+        if(value == null) {
+            return true;
+        }
+        if(!isAllowed(value.getOriginalFilename(), value.getContentType()) || value.getContent() == null) {
+            return false;
+        }
+        // A small file can still decode into a huge bitmap, the dimensions are read from its header while it is uploaded
+        if((long) value.getWidth() * value.getHeight() > maxPixels) {
+            context.disableDefaultConstraintViolation();
+            context.buildConstraintViolationWithTemplate(String.format("The image must not have more than %d pixels.", maxPixels))
+                    .addConstraintViolation();
+            return false;
+        }
+        return true;
+    }
+
+    public static boolean isAllowed(String originalFilename, String contentType) {
+        if(originalFilename == null || contentType == null) {
+            return false;
+        }
+        String filename = originalFilename.toLowerCase();
+        return (contentType.equals("image/jpeg") && (filename.endsWith(".jpg") || filename.endsWith(".jpeg"))) ||
+                (contentType.equals("image/png") && filename.endsWith(".png"));
     }
 
     @Override
@@ -1,9 +1,11 @@
 package socialnetwork.exceptions;
 
-import org.apache.tomcat.util.http.fileupload.impl.SizeException;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.fileupload2.core.FileUploadSizeException;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ProblemDetail;
-import org.springframework.web.bind.MethodArgumentNotValidException;
+import org.springframework.validation.BindException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 
@@ -11,6 +13,7 @@ import java.net.URI;
 import java.sql.SQLIntegrityConstraintViolationException;
 
 @RestControllerAdvice
+@Slf4j
 public class GlobalExceptionHandler {
 
     @ExceptionHandler(EntityNotFoundException.class)
@@ -27,14 +30,45 @@ public class GlobalExceptionHandler {
         return detail;
     }
 
-    @ExceptionHandler(MethodArgumentNotValidException.class)
-    public ProblemDetail invalidArgumentsHandler(MethodArgumentNotValidException e) {
+    // A batched insert reports the violation as a BatchUpdateException, which isn't a SQLIntegrityConstraintViolationException.
+    // Its message contains the statement and the values, so it is only logged.
+    @ExceptionHandler(DataIntegrityViolationException.class)
+    public ProblemDetail dataIntegrityViolationHandler(DataIntegrityViolationException e) {
+        log.info("The request violated a database constraint.", e.getMostSpecificCause());
+        ProblemDetail detail = ProblemDetail.forStatusAndDetail(HttpStatus.NOT_ACCEPTABLE, "The data conflicts with an existing record or violates a constraint.");
+        detail.setType(URI.create("socialnetwork/invalid-arguments"));
+        return detail;
+    }
+
+    @ExceptionHandler(BindException.class)
+    public ProblemDetail invalidArgumentsHandler(BindException e) {
         ProblemDetail detail = ProblemDetail.forStatus(HttpStatus.NOT_ACCEPTABLE);
         detail.setDetail(e.getBindingResult().getFieldError().getDefaultMessage());
         detail.setType(URI.create("socialnetwork/invalid-arguments"));
         return detail;
     }
 
+    @ExceptionHandler(InvalidImageContentException.class)
+    public ProblemDetail invalidImageContentHandler(InvalidImageContentException e) {
+        ProblemDetail detail = ProblemDetail.forStatusAndDetail(HttpStatus.NOT_ACCEPTABLE, e.getMessage());
+        detail.setType(URI.create("socialnetwork/invalid-arguments"));
+        return detail;
+    }
+
+    @ExceptionHandler(InvalidCursorException.class)
+    public ProblemDetail invalidCursorHandler(InvalidCursorException e) {
+        ProblemDetail detail = ProblemDetail.forStatusAndDetail(HttpStatus.NOT_ACCEPTABLE, e.getMessage());
+        detail.setType(URI.create("socialnetwork/invalid-arguments"));
+        return detail;
+    }
+
+    @ExceptionHandler(InvalidThumbnailSizeException.class)
+    public ProblemDetail invalidThumbnailSizeHandler(InvalidThumbnailSizeException e) {
+        ProblemDetail detail = ProblemDetail.forStatusAndDetail(HttpStatus.NOT_ACCEPTABLE, e.getMessage());
+        detail.setType(URI.create("socialnetwork/invalid-arguments"));
+        return detail;
+    }
+
     @ExceptionHandler(NoSuchRelationshipException.class)
     public ProblemDetail noSuchRelationshipHandler(NoSuchRelationshipException e) {
         ProblemDetail detail = ProblemDetail.forStatusAndDetail(HttpStatus.NOT_FOUND, e.getMessage());
@@ -42,8 +76,8 @@ public class GlobalExceptionHandler {
         return detail;
     }
 
-    @ExceptionHandler(SizeException.class)
-    public ProblemDetail fileSizeLimitHandler(SizeException e) {
+    @ExceptionHandler(FileUploadSizeException.class)
+    public ProblemDetail fileSizeLimitHandler(FileUploadSizeException e) {
         ProblemDetail detail = ProblemDetail.forStatusAndDetail(HttpStatus.PAYLOAD_TOO_LARGE, e.getMessage());
         detail.setType(URI.create("socialnetwork/image-too-large"));
         return detail;
@@ -55,4 +89,11 @@ public class GlobalExceptionHandler {
         detail.setType(URI.create("socialnetwork/same-user-relationship"));
         return detail;
     }
+
+    @ExceptionHandler(SearchBudgetExceededException.class)
+    public ProblemDetail searchBudgetHandler(SearchBudgetExceededException e) {
+        ProblemDetail detail = ProblemDetail.forStatusAndDetail(HttpStatus.SERVICE_UNAVAILABLE, e.getMessage());
+        detail.setType(URI.create("socialnetwork/search-budget-exceeded"));
+        return detail;
+    }
 }
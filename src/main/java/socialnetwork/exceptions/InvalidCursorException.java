@@ -0,0 +1,7 @@
+package socialnetwork.exceptions;
+
+public class InvalidCursorException extends RuntimeException {
+    public InvalidCursorException(String cursor) {
+        super("The page cursor '" + cursor + "' is invalid.");
+    }
+}
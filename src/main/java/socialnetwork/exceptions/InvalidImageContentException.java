@@ -0,0 +1,7 @@
+package socialnetwork.exceptions;
+
+public class InvalidImageContentException extends RuntimeException {
+    public InvalidImageContentException(String format) {
+        super("The content of the file is not a valid " + format + " image.");
+    }
+}
@@ -0,0 +1,9 @@
+package socialnetwork.exceptions;
+
+import java.util.Collection;
+
+public class InvalidThumbnailSizeException extends RuntimeException {
+    public InvalidThumbnailSizeException(String size, Collection<String> sizes) {
+        super("The thumbnail size '" + size + "' is unknown. Available sizes: " + String.join(", ", sizes) + ".");
+    }
+}
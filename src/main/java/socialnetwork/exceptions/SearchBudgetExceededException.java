@@ -0,0 +1,7 @@
+package socialnetwork.exceptions;
+
+public class SearchBudgetExceededException extends RuntimeException {
+    public SearchBudgetExceededException() {
+        super("The search exceeded its time limit, the distance can not be determined.");
+    }
+}
@@ -0,0 +1,218 @@
+package socialnetwork.graph;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+@Component
+@RequiredArgsConstructor
+public class FriendRecommender {
+
+    private static final int GALLOPING_RATIO = 16;
+
+    private static final long DENSE_COUNTER_LIMIT = 1 << 22;
+
+    private final Queue<DenseCounter> denseCounters = new ConcurrentLinkedQueue<>();
+
+    private final FriendshipGraph friendshipGraph;
+
+    public long[] mutualFriends(long userId, long otherId) {
+        return intersect(friendshipGraph.friendsOf(userId), friendshipGraph.friendsOf(otherId));
+    }
+
+    public List<FriendSuggestion> suggestFriends(long userId, int limit) {
+        long[] friends = friendshipGraph.friendsOf(userId);
+        long maxUserId = friendshipGraph.getMaxUserId();
+        if(maxUserId < DENSE_COUNTER_LIMIT) {
+            return suggestFriendsDense(userId, friends, (int) maxUserId, limit);
+        }
+        long visits = 0;
+        for(long friendId : friends) {
+            visits += friendshipGraph.degreeOf(friendId);
+        }
+        LongIntHashMap candidates = new LongIntHashMap((int) Math.min(visits, 1 << 20));
+        for(long friendId : friends) {
+            for(long candidate : friendshipGraph.friendsOf(friendId)) {
+                if(candidate != userId) {
+                    candidates.increment(candidate);
+                }
+            }
+        }
+        TopSuggestions top = new TopSuggestions(limit);
+        long[] keys = candidates.keys();
+        int[] values = candidates.values();
+        for(int i = 0; i < keys.length; i++) {
+            if(!LongIntHashMap.isEmpty(keys[i]) && Arrays.binarySearch(friends, keys[i]) < 0) {
+                top.offer(keys[i], values[i]);
+            }
+        }
+        return top.toList();
+    }
+
+    private List<FriendSuggestion> suggestFriendsDense(long userId, long[] friends, int maxUserId, int limit) {
+        DenseCounter counter = Objects.requireNonNullElseGet(denseCounters.poll(), DenseCounter::new);
+        counter.ensureCapacity(maxUserId + 1);
+        int[] counts = counter.counts;
+        for(long friendId : friends) {
+            for(long candidate : friendshipGraph.friendsOf(friendId)) {
+                if(candidate != userId && candidate <= maxUserId && counts[(int) candidate]++ == 0) {
+                    counter.touch((int) candidate);
+                }
+            }
+        }
+        TopSuggestions top = new TopSuggestions(limit);
+        for(int i = 0; i < counter.touched; i++) {
+            int candidate = counter.touchedIds[i];
+            if(Arrays.binarySearch(friends, candidate) < 0) {
+                top.offer(candidate, counts[candidate]);
+            }
+            counts[candidate] = 0;
+        }
+        counter.touched = 0;
+        denseCounters.offer(counter);
+        return top.toList();
+    }
+
+    static long[] intersect(long[] first, long[] second) {
+        long[] small = first.length <= second.length ? first : second;
+        long[] large = small == first ? second : first;
+        long[] result = new long[small.length];
+        int count = 0;
+        if(large.length / GALLOPING_RATIO > small.length) {
+            int from = 0;
+            for(long id : small) {
+                int index = Arrays.binarySearch(large, from, large.length, id);
+                if(index >= 0) {
+                    result[count++] = id;
+                    from = index + 1;
+                } else {
+                    from = -index - 1;
+                }
+            }
+        } else {
+            int i = 0;
+            int j = 0;
+            while(i < small.length && j < large.length) {
+                if(small[i] < large[j]) {
+                    i++;
+                } else if(small[i] > large[j]) {
+                    j++;
+                } else {
+                    result[count++] = small[i];
+                    i++;
+                    j++;
+                }
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private static class DenseCounter {
+
+        private int[] counts = new int[0];
+
+        private int[] touchedIds = new int[1024];
+
+        private int touched;
+
+        void ensureCapacity(int capacity) {
+            if(counts.length < capacity) {
+                counts = new int[Math.max(capacity, counts.length * 2)];
+            }
+        }
+
+        void touch(int id) {
+            if(touched == touchedIds.length) {
+                touchedIds = Arrays.copyOf(touchedIds, touched * 2);
+            }
+            touchedIds[touched++] = id;
+        }
+    }
+
+    private static class TopSuggestions {
+
+        private final long[] ids;
+
+        private final int[] counts;
+
+        private int size;
+
+        TopSuggestions(int limit) {
+            ids = new long[limit];
+            counts = new int[limit];
+        }
+
+        void offer(long id, int count) {
+            if(size < ids.length) {
+                ids[size] = id;
+                counts[size] = count;
+                siftUp(size++);
+            } else if(isWorse(ids[0], counts[0], id, count)) {
+                ids[0] = id;
+                counts[0] = count;
+                siftDown();
+            }
+        }
+
+        List<FriendSuggestion> toList() {
+            List<FriendSuggestion> result = new ArrayList<>(size);
+            while(size > 0) {
+                result.add(new FriendSuggestion(ids[0], counts[0]));
+                size--;
+                ids[0] = ids[size];
+                counts[0] = counts[size];
+                siftDown();
+            }
+            Collections.reverse(result);
+            return result;
+        }
+
+        private static boolean isWorse(long id, int count, long otherId, int otherCount) {
+            return count < otherCount || (count == otherCount && id > otherId);
+        }
+
+        private void siftUp(int index) {
+            while(index > 0) {
+                int parent = (index - 1) / 2;
+                if(!isWorse(ids[index], counts[index], ids[parent], counts[parent])) {
+                    return;
+                }
+                swap(index, parent);
+                index = parent;
+            }
+        }
+
+        private void siftDown() {
+            int index = 0;
+            while(true) {
+                int worst = index;
+                for(int child = 2 * index + 1; child <= 2 * index + 2 && child < size; child++) {
+                    if(isWorse(ids[child], counts[child], ids[worst], counts[worst])) {
+                        worst = child;
+                    }
+                }
+                if(worst == index) {
+                    return;
+                }
+                swap(index, worst);
+                index = worst;
+            }
+        }
+
+        private void swap(int i, int j) {
+            long id = ids[i];
+            ids[i] = ids[j];
+            ids[j] = id;
+            int count = counts[i];
+            counts[i] = counts[j];
+            counts[j] = count;
+        }
+    }
+}
@@ -0,0 +1,4 @@
+package socialnetwork.graph;
+
+public record FriendSuggestion(long userId, int mutualFriends) {
+}
@@ -0,0 +1,156 @@
+package socialnetwork.graph;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import socialnetwork.services.RelationshipChangedEvent;
+import socialnetwork.services.UserDeletedEvent;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Component
+@Slf4j
+public class FriendshipGraph {
+
+    private static final long[] NO_FRIENDS = new long[0];
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private volatile Map<Long, long[]> adjacency = new ConcurrentHashMap<>();
+
+    private final AtomicLong maxUserId = new AtomicLong();
+
+    public FriendshipGraph(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    public void reload() {
+        AdjacencyBuilder builder = new AdjacencyBuilder();
+        jdbcTemplate.query("SELECT user_id, friend_id FROM users_to_users ORDER BY user_id, friend_id",
+                (RowCallbackHandler) rs -> builder.add(rs.getLong(1), rs.getLong(2)));
+        builder.flush();
+        adjacency = new ConcurrentHashMap<>(builder.adjacency);
+        maxUserId.set(builder.maxUserId);
+        log.info("Friendship graph has been loaded with {} users and {} edges.", builder.adjacency.size(), builder.edges);
+    }
+
+    public long[] friendsOf(long userId) {
+        return adjacency.getOrDefault(userId, NO_FRIENDS);
+    }
+
+    public int degreeOf(long userId) {
+        return friendsOf(userId).length;
+    }
+
+    public boolean areFriends(long userId, long friendId) {
+        return Arrays.binarySearch(friendsOf(userId), friendId) >= 0;
+    }
+
+    public long getMaxUserId() {
+        return maxUserId.get();
+    }
+
+    public void addFriendship(long userId, long friendId) {
+        maxUserId.accumulateAndGet(Math.max(userId, friendId), Math::max);
+        adjacency.compute(userId, (id, friends) -> insert(friends == null ? NO_FRIENDS : friends, friendId));
+        adjacency.compute(friendId, (id, friends) -> insert(friends == null ? NO_FRIENDS : friends, userId));
+    }
+
+    public void removeFriendship(long userId, long friendId) {
+        adjacency.computeIfPresent(userId, (id, friends) -> remove(friends, friendId));
+        adjacency.computeIfPresent(friendId, (id, friends) -> remove(friends, userId));
+    }
+
+    public void removeUser(long userId) {
+        long[] friends = adjacency.remove(userId);
+        if(friends != null) {
+            for(long friendId : friends) {
+                adjacency.computeIfPresent(friendId, (id, list) -> remove(list, userId));
+            }
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onRelationshipChanged(RelationshipChangedEvent event) {
+        if(event.added()) {
+            addFriendship(event.userId(), event.friendId());
+        } else {
+            removeFriendship(event.userId(), event.friendId());
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUserDeleted(UserDeletedEvent event) {
+        removeUser(event.userId());
+    }
+
+    private static long[] insert(long[] friends, long friendId) {
+        int index = Arrays.binarySearch(friends, friendId);
+        if(index >= 0) {
+            return friends;
+        }
+        int position = -index - 1;
+        long[] result = new long[friends.length + 1];
+        System.arraycopy(friends, 0, result, 0, position);
+        result[position] = friendId;
+        System.arraycopy(friends, position, result, position + 1, friends.length - position);
+        return result;
+    }
+
+    private static long[] remove(long[] friends, long friendId) {
+        int index = Arrays.binarySearch(friends, friendId);
+        if(index < 0) {
+            return friends;
+        }
+        if(friends.length == 1) {
+            return null;
+        }
+        long[] result = new long[friends.length - 1];
+        System.arraycopy(friends, 0, result, 0, index);
+        System.arraycopy(friends, index + 1, result, index, friends.length - index - 1);
+        return result;
+    }
+
+    private static class AdjacencyBuilder {
+
+        private final Map<Long, long[]> adjacency = new HashMap<>();
+
+        private long[] buffer = new long[16];
+
+        private int size;
+
+        private long userId = -1;
+
+        private long edges;
+
+        private long maxUserId;
+
+        void add(long userId, long friendId) {
+            if(userId != this.userId) {
+                flush();
+                this.userId = userId;
+            }
+            if(size == buffer.length) {
+                buffer = Arrays.copyOf(buffer, size * 2);
+            }
+            buffer[size++] = friendId;
+            edges++;
+            maxUserId = Math.max(maxUserId, Math.max(userId, friendId));
+        }
+
+        void flush() {
+            if(size > 0) {
+                adjacency.put(userId, Arrays.copyOf(buffer, size));
+                size = 0;
+            }
+        }
+    }
+}
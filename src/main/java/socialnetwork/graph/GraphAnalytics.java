@@ -0,0 +1,298 @@
+package socialnetwork.graph;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+
+import javax.sql.DataSource;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+@Component
+@Slf4j
+public class GraphAnalytics {
+
+    private static final int FETCH_SIZE = 10_000;
+
+    private static final int WRITE_BATCH_SIZE = 1000;
+
+    private static final int TOP_USERS = 20;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final TransactionTemplate snapshotTemplate;
+
+    private final int parallelism;
+
+    private final long memoryBudget;
+
+    public GraphAnalytics(DataSource dataSource, TransactionTemplate transactionTemplate,
+                          @Value("${socialnetwork.analytics.parallelism}") int parallelism,
+                          @Value("${socialnetwork.analytics.memory-budget}") DataSize memoryBudget) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(FETCH_SIZE);
+        this.transactionTemplate = transactionTemplate;
+        this.snapshotTemplate = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        this.snapshotTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        this.snapshotTemplate.setReadOnly(true);
+        this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        this.memoryBudget = memoryBudget.toBytes();
+    }
+
+    public GraphReport analyze() {
+        Snapshot graph = snapshotTemplate.execute(status -> snapshot());
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            int[] components = findComponents(graph, pool);
+            long[] triangles = countTriangles(graph, pool);
+            saveUserStats(graph, components, triangles);
+            return report(graph, components, triangles);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // The counts and both scans run in one repeatable-read transaction, so they all see the same state of the tables
+    private Snapshot snapshot() {
+        long users = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM users", Long.class);
+        long edges = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM users_to_users", Long.class);
+        // 44 bytes of arrays per user, 4 bytes per edge row and 2 more for the oriented copy used by the triangle count
+        long required = users * 44 + edges * 6;
+        if(required > memoryBudget || users >= Integer.MAX_VALUE || edges >= Integer.MAX_VALUE) {
+            throw new IllegalStateException("The snapshot of " + users + " users and " + edges + " edges needs about "
+                    + DataSize.ofBytes(required).toMegabytes() + " MB, which exceeds the memory budget of " + DataSize.ofBytes(memoryBudget).toMegabytes() + " MB.");
+        }
+        long[] ids = new long[(int) users];
+        int[] count = {0};
+        jdbcTemplate.query("SELECT id FROM users ORDER BY id", (RowCallbackHandler) rs -> {
+            if(count[0] < ids.length) {
+                ids[count[0]++] = rs.getLong(1);
+            }
+        });
+        long[] userIds = count[0] == ids.length ? ids : Arrays.copyOf(ids, count[0]);
+        int[] offsets = new int[userIds.length + 1];
+        int[] targets = new int[(int) edges];
+        int[] size = {0};
+        jdbcTemplate.query("SELECT user_id, friend_id FROM users_to_users ORDER BY user_id, friend_id", (RowCallbackHandler) rs -> {
+            int user = Arrays.binarySearch(userIds, rs.getLong(1));
+            int friend = Arrays.binarySearch(userIds, rs.getLong(2));
+            if(user >= 0 && friend >= 0 && size[0] < targets.length) {
+                offsets[user + 1]++;
+                targets[size[0]++] = friend;
+            }
+        });
+        for(int i = 0; i < userIds.length; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+        log.info("Graph snapshot has been taken with {} users and {} edges.", userIds.length, size[0]);
+        return new Snapshot(userIds, offsets, size[0] == targets.length ? targets : Arrays.copyOf(targets, size[0]));
+    }
+
+    // Lock-free union-find: a root is always linked under the smaller root, so every root is the smallest index of its component
+    private int[] findComponents(Snapshot graph, ForkJoinPool pool) {
+        int n = graph.size();
+        AtomicIntegerArray parents = new AtomicIntegerArray(n);
+        for(int i = 0; i < n; i++) {
+            parents.set(i, i);
+        }
+        forEachUser(pool, n, user -> {
+            for(int i = graph.offsets[user]; i < graph.offsets[user + 1]; i++) {
+                int friend = graph.targets[i];
+                if(friend > user) {
+                    union(parents, user, friend);
+                }
+            }
+        });
+        int[] components = new int[n];
+        forEachUser(pool, n, user -> components[user] = find(parents, user));
+        return components;
+    }
+
+    private static int find(AtomicIntegerArray parents, int node) {
+        int current = node;
+        int parent;
+        while((parent = parents.get(current)) != current) {
+            int grandParent = parents.get(parent);
+            if(grandParent != parent) {
+                parents.compareAndSet(current, parent, grandParent);
+            }
+            current = parent;
+        }
+        return current;
+    }
+
+    private static void union(AtomicIntegerArray parents, int a, int b) {
+        while(true) {
+            int rootA = find(parents, a);
+            int rootB = find(parents, b);
+            if(rootA == rootB) {
+                return;
+            }
+            int high = Math.max(rootA, rootB);
+            int low = Math.min(rootA, rootB);
+            if(parents.compareAndSet(high, high, low)) {
+                return;
+            }
+        }
+    }
+
+    // Every edge is oriented towards the user of higher degree, which bounds the out-degrees by the square root of the edges
+    private long[] countTriangles(Snapshot graph, ForkJoinPool pool) {
+        int n = graph.size();
+        int[] outOffsets = new int[n + 1];
+        forEachUser(pool, n, user -> {
+            int out = 0;
+            for(int i = graph.offsets[user]; i < graph.offsets[user + 1]; i++) {
+                if(graph.precedes(user, graph.targets[i])) {
+                    out++;
+                }
+            }
+            outOffsets[user + 1] = out;
+        });
+        for(int i = 0; i < n; i++) {
+            outOffsets[i + 1] += outOffsets[i];
+        }
+        int[] outTargets = new int[outOffsets[n]];
+        forEachUser(pool, n, user -> {
+            int position = outOffsets[user];
+            for(int i = graph.offsets[user]; i < graph.offsets[user + 1]; i++) {
+                if(graph.precedes(user, graph.targets[i])) {
+                    outTargets[position++] = graph.targets[i];
+                }
+            }
+        });
+        AtomicLongArray counts = new AtomicLongArray(n);
+        forEachUser(pool, n, user -> {
+            long own = 0;
+            for(int i = outOffsets[user]; i < outOffsets[user + 1]; i++) {
+                int friend = outTargets[i];
+                int a = outOffsets[user];
+                int b = outOffsets[friend];
+                while(a < outOffsets[user + 1] && b < outOffsets[friend + 1]) {
+                    if(outTargets[a] < outTargets[b]) {
+                        a++;
+                    } else if(outTargets[a] > outTargets[b]) {
+                        b++;
+                    } else {
+                        own++;
+                        counts.incrementAndGet(friend);
+                        counts.incrementAndGet(outTargets[a]);
+                        a++;
+                        b++;
+                    }
+                }
+            }
+            if(own > 0) {
+                counts.addAndGet(user, own);
+            }
+        });
+        long[] triangles = new long[n];
+        for(int i = 0; i < n; i++) {
+            triangles[i] = counts.get(i);
+        }
+        return triangles;
+    }
+
+    private void saveUserStats(Snapshot graph, int[] components, long[] triangles) {
+        int[] connected = IntStream.range(0, graph.size()).filter(user -> graph.degreeOf(user) > 0).toArray();
+        transactionTemplate.executeWithoutResult(status -> jdbcTemplate.update("DELETE FROM graph_user_stats"));
+        for(int from = 0; from < connected.length; from += WRITE_BATCH_SIZE) {
+            int start = from;
+            int end = Math.min(from + WRITE_BATCH_SIZE, connected.length);
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(
+                    "INSERT INTO graph_user_stats (user_id, degree, component_id, triangles) VALUES (?, ?, ?, ?)",
+                    new BatchPreparedStatementSetter() {
+                        @Override
+                        public void setValues(PreparedStatement ps, int i) throws SQLException {
+                            int user = connected[start + i];
+                            ps.setLong(1, graph.ids[user]);
+                            ps.setInt(2, graph.degreeOf(user));
+                            ps.setLong(3, graph.ids[components[user]]);
+                            ps.setLong(4, triangles[user]);
+                        }
+
+                        @Override
+                        public int getBatchSize() {
+                            return end - start;
+                        }
+                    }));
+        }
+    }
+
+    private GraphReport report(Snapshot graph, int[] components, long[] triangles) {
+        int n = graph.size();
+        Map<Integer, Long> histogram = new TreeMap<>();
+        int[] componentSizes = new int[n];
+        long triangleSum = 0;
+        for(int user = 0; user < n; user++) {
+            histogram.merge(graph.degreeOf(user), 1L, Long::sum);
+            componentSizes[components[user]]++;
+            triangleSum += triangles[user];
+        }
+        long componentCount = Arrays.stream(componentSizes).filter(s -> s > 0).count();
+        int largestComponent = Arrays.stream(componentSizes).max().orElse(0);
+        return new GraphReport(LocalDateTime.now(), n, graph.targets.length / 2, componentCount, largestComponent, triangleSum / 3, histogram,
+                topUsers(graph, triangles, Comparator.comparingInt(graph::degreeOf)),
+                topUsers(graph, triangles, Comparator.comparingLong(user -> triangles[user])));
+    }
+
+    private List<GraphReport.UserStats> topUsers(Snapshot graph, long[] triangles, Comparator<Integer> order) {
+        PriorityQueue<Integer> top = new PriorityQueue<>(TOP_USERS + 1, order);
+        for(int user = 0; user < graph.size(); user++) {
+            top.add(user);
+            if(top.size() > TOP_USERS) {
+                top.poll();
+            }
+        }
+        List<GraphReport.UserStats> result = new ArrayList<>(top.size());
+        while(!top.isEmpty()) {
+            int user = top.poll();
+            result.add(new GraphReport.UserStats(graph.ids[user], graph.degreeOf(user), triangles[user]));
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    private static void forEachUser(ForkJoinPool pool, int size, IntConsumer action) {
+        pool.submit(() -> IntStream.range(0, size).parallel().forEach(action)).join();
+    }
+
+    private record Snapshot(long[] ids, int[] offsets, int[] targets) {
+
+        int size() {
+            return ids.length;
+        }
+
+        int degreeOf(int user) {
+            return offsets[user + 1] - offsets[user];
+        }
+
+        boolean precedes(int user, int other) {
+            int degree = degreeOf(user);
+            int otherDegree = degreeOf(other);
+            return degree < otherDegree || (degree == otherDegree && user < other);
+        }
+    }
+}
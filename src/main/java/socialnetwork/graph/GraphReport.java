@@ -0,0 +1,12 @@
+package socialnetwork.graph;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+public record GraphReport(LocalDateTime generatedAt, long users, long friendships, long components, long largestComponent,
+                          long triangles, Map<Integer, Long> degreeHistogram, List<UserStats> topByDegree, List<UserStats> topByTriangles) {
+
+    public record UserStats(long userId, int degree, long triangles) {
+    }
+}
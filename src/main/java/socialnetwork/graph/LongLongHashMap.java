@@ -0,0 +1,76 @@
+package socialnetwork.graph;
+
+import java.util.Arrays;
+
+class LongLongHashMap {
+
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private long[] keys;
+
+    private long[] values;
+
+    private int size;
+
+    LongLongHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(expectedSize * 2, 16) - 1) << 1;
+        keys = new long[capacity];
+        values = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    boolean putIfAbsent(long key, long value) {
+        int index = indexOf(key, keys);
+        if(keys[index] != EMPTY) {
+            return false;
+        }
+        keys[index] = key;
+        values[index] = value;
+        if(++size * 2 > keys.length) {
+            grow();
+        }
+        return true;
+    }
+
+    boolean containsKey(long key) {
+        return keys[indexOf(key, keys)] != EMPTY;
+    }
+
+    long get(long key) {
+        int index = indexOf(key, keys);
+        return keys[index] == EMPTY ? EMPTY : values[index];
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        long[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new long[oldValues.length * 2];
+        Arrays.fill(keys, EMPTY);
+        for(int i = 0; i < oldKeys.length; i++) {
+            if(oldKeys[i] != EMPTY) {
+                int index = indexOf(oldKeys[i], keys);
+                keys[index] = oldKeys[i];
+                values[index] = oldValues[i];
+            }
+        }
+    }
+
+    private static int indexOf(long key, long[] keys) {
+        int mask = keys.length - 1;
+        int index = (int) (mix(key) & mask);
+        while(keys[index] != EMPTY && keys[index] != key) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    private static long mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 32);
+    }
+}
@@ -0,0 +1,120 @@
+package socialnetwork.graph;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import socialnetwork.exceptions.SearchBudgetExceededException;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Optional;
+
+@Component
+public class SeparationFinder {
+
+    private static final long NO_PARENT = -1;
+
+    private static final int DEADLINE_CHECK_INTERVAL = 1024;
+
+    private final FriendshipGraph friendshipGraph;
+
+    private final int maxDepth;
+
+    private final Duration timeout;
+
+    public SeparationFinder(FriendshipGraph friendshipGraph,
+                            @Value("${socialnetwork.graph.max-search-depth}") int maxDepth,
+                            @Value("${socialnetwork.graph.search-timeout}") Duration timeout) {
+        this.friendshipGraph = friendshipGraph;
+        this.maxDepth = maxDepth;
+        this.timeout = timeout;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public Optional<long[]> findShortestPath(long fromId, long toId, int depthLimit) {
+        if(fromId == toId) {
+            return Optional.of(new long[] {fromId});
+        }
+        int maxDepth = Math.min(depthLimit, this.maxDepth);
+        long deadline = System.nanoTime() + timeout.toNanos();
+        Side forward = new Side(fromId);
+        Side backward = new Side(toId);
+        int depth = 0;
+        while(depth < maxDepth && forward.size > 0 && backward.size > 0) {
+            Side expanded = forward.size <= backward.size ? forward : backward;
+            Side other = expanded == forward ? backward : forward;
+            long meeting = expand(expanded, other, deadline);
+            depth++;
+            if(meeting != NO_PARENT) {
+                return Optional.of(buildPath(forward, backward, meeting));
+            }
+        }
+        return Optional.empty();
+    }
+
+    private long expand(Side side, Side other, long deadline) {
+        long[] next = new long[Math.max(16, side.size)];
+        int nextSize = 0;
+        int visits = 0;
+        for(int i = 0; i < side.size; i++) {
+            long node = side.frontier[i];
+            for(long neighbour : friendshipGraph.friendsOf(node)) {
+                if(++visits % DEADLINE_CHECK_INTERVAL == 0 && System.nanoTime() > deadline) {
+                    throw new SearchBudgetExceededException();
+                }
+                if(side.parents.putIfAbsent(neighbour, node)) {
+                    if(other.parents.containsKey(neighbour)) {
+                        return neighbour;
+                    }
+                    if(nextSize == next.length) {
+                        next = Arrays.copyOf(next, nextSize * 2);
+                    }
+                    next[nextSize++] = neighbour;
+                }
+            }
+        }
+        side.frontier = next;
+        side.size = nextSize;
+        return NO_PARENT;
+    }
+
+    private long[] buildPath(Side forward, Side backward, long meeting) {
+        long[] head = walk(forward, meeting);
+        long[] tail = walk(backward, meeting);
+        long[] path = new long[head.length + tail.length - 1];
+        for(int i = 0; i < head.length; i++) {
+            path[i] = head[head.length - 1 - i];
+        }
+        System.arraycopy(tail, 1, path, head.length, tail.length - 1);
+        return path;
+    }
+
+    private long[] walk(Side side, long node) {
+        long[] path = new long[16];
+        int size = 0;
+        for(long current = node; current != NO_PARENT; current = side.parents.get(current)) {
+            if(size == path.length) {
+                path = Arrays.copyOf(path, size * 2);
+            }
+            path[size++] = current;
+        }
+        return Arrays.copyOf(path, size);
+    }
+
+    private static class Side {
+
+        private final LongLongHashMap parents = new LongLongHashMap(64);
+
+        private long[] frontier;
+
+        private int size;
+
+        Side(long root) {
+            parents.putIfAbsent(root, NO_PARENT);
+            frontier = new long[] {root};
+            size = 1;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package socialnetwork.ids;
+
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import org.hibernate.internal.util.config.ConfigurationHelper;
+import org.hibernate.jdbc.AbstractReturningWork;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Properties;
+
+public class BlockIdGenerator implements IdentifierGenerator {
+
+    public static final String TABLE = "table";
+
+    public static final String BLOCK_SIZE = "block_size";
+
+    private String table;
+
+    private int blockSize;
+
+    private long next;
+
+    private long limit;
+
+    @Override
+    public void configure(Type type, Properties params, ServiceRegistry serviceRegistry) {
+        table = ConfigurationHelper.getString(TABLE, params);
+        blockSize = ConfigurationHelper.getInt(BLOCK_SIZE, params, 50);
+    }
+
+    @Override
+    public synchronized Object generate(SharedSessionContractImplementor session, Object object) {
+        if(next == limit) {
+            next = session.getTransactionCoordinator().createIsolationDelegate().delegateWork(new AbstractReturningWork<Long>() {
+                @Override
+                public Long execute(Connection connection) throws SQLException {
+                    return IdBlocks.reserve(connection, table, blockSize);
+                }
+            }, true);
+            limit = next + blockSize;
+        }
+        return next++;
+    }
+}
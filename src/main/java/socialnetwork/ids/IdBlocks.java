@@ -0,0 +1,43 @@
+package socialnetwork.ids;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Set;
+
+public final class IdBlocks {
+
+    private static final Set<String> TABLES = Set.of("users", "posts");
+
+    private IdBlocks() {
+    }
+
+    // Rows inserted with explicit ids (fixtures, manual fixes) are skipped by starting above the current maximum
+    public static long reserve(Connection connection, String table, int size) throws SQLException {
+        if(!TABLES.contains(table)) {
+            throw new IllegalArgumentException("No id block is defined for table: " + table);
+        }
+        long next;
+        try(PreparedStatement select = connection.prepareStatement("SELECT next_id FROM id_blocks WHERE name = ? FOR UPDATE")) {
+            select.setString(1, table);
+            try(ResultSet rs = select.executeQuery()) {
+                if(!rs.next()) {
+                    throw new IllegalStateException("The id block of table " + table + " is missing.");
+                }
+                next = rs.getLong(1);
+            }
+        }
+        try(PreparedStatement max = connection.prepareStatement("SELECT COALESCE(MAX(id), 0) + 1 FROM " + table);
+            ResultSet rs = max.executeQuery()) {
+            rs.next();
+            next = Math.max(next, rs.getLong(1));
+        }
+        try(PreparedStatement update = connection.prepareStatement("UPDATE id_blocks SET next_id = ? WHERE name = ?")) {
+            update.setLong(1, next + size);
+            update.setString(2, table);
+            update.executeUpdate();
+        }
+        return next;
+    }
+}
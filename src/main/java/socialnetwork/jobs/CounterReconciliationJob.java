@@ -0,0 +1,37 @@
+package socialnetwork.jobs;
+
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import socialnetwork.repositories.UserRepository;
+import socialnetwork.services.UserService;
+
+@Component
+@AllArgsConstructor
+@Slf4j
+@ConditionalOnProperty(name = "socialnetwork.jobs.reconcile-counters", havingValue = "true")
+public class CounterReconciliationJob implements ApplicationRunner {
+
+    private static final long USERS_PER_BATCH = 1000;
+
+    private UserRepository userRepository;
+
+    private UserService userService;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        long maxId = userRepository.findMaxId().orElse(0L);
+        long drifted = 0;
+        for(long from = 1; from <= maxId; from += USERS_PER_BATCH) {
+            int corrected = userService.reconcileCounters(from, from + USERS_PER_BATCH - 1);
+            if(corrected > 0) {
+                log.warn("The counters of {} users between ID {} and {} have drifted and have been corrected.", corrected, from, from + USERS_PER_BATCH - 1);
+            }
+            drifted += corrected;
+        }
+        log.info("The counters of users up to ID {} have been reconciled, {} users have drifted.", maxId, drifted);
+    }
+}
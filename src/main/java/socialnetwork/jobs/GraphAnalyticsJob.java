@@ -0,0 +1,46 @@
+package socialnetwork.jobs;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import socialnetwork.graph.GraphAnalytics;
+import socialnetwork.graph.GraphReport;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+@Component
+@Slf4j
+@ConditionalOnProperty(name = "socialnetwork.jobs.graph-analytics", havingValue = "true")
+public class GraphAnalyticsJob implements ApplicationRunner {
+
+    private final GraphAnalytics graphAnalytics;
+
+    private final ObjectMapper objectMapper;
+
+    private final Path reportFile;
+
+    public GraphAnalyticsJob(GraphAnalytics graphAnalytics, ObjectMapper objectMapper,
+                             @Value("${socialnetwork.analytics.report-file}") Path reportFile) {
+        this.graphAnalytics = graphAnalytics;
+        this.objectMapper = objectMapper;
+        this.reportFile = reportFile;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws IOException {
+        GraphReport report = graphAnalytics.analyze();
+        Path parent = reportFile.toAbsolutePath().getParent();
+        if(parent != null) {
+            Files.createDirectories(parent);
+        }
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(reportFile.toFile(), report);
+        log.info("Graph report of {} users, {} friendships, {} components and {} triangles has been written to {}.",
+                report.users(), report.friendships(), report.components(), report.triangles(), reportFile);
+    }
+}
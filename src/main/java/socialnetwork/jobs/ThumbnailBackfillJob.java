@@ -0,0 +1,48 @@
+package socialnetwork.jobs;
+
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import socialnetwork.repositories.PostRepository;
+import socialnetwork.thumbnails.ThumbnailGenerator;
+import socialnetwork.thumbnails.ThumbnailProperties;
+
+import java.util.List;
+
+@Component
+@AllArgsConstructor
+@Slf4j
+@ConditionalOnProperty(name = "socialnetwork.jobs.backfill-thumbnails", havingValue = "true")
+public class ThumbnailBackfillJob implements ApplicationRunner {
+
+    private static final int POSTS_PER_BATCH = 100;
+
+    private PostRepository postRepository;
+
+    private ThumbnailGenerator thumbnailGenerator;
+
+    private ThumbnailProperties thumbnailProperties;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        int variants = thumbnailProperties.getSizes().size();
+        if(variants == 0) {
+            return;
+        }
+        long afterId = 0;
+        long posts = 0;
+        long thumbnails = 0;
+        List<Long> ids;
+        while(!(ids = postRepository.listPostIdsWithoutThumbnails(afterId, variants, POSTS_PER_BATCH)).isEmpty()) {
+            for(long id : ids) {
+                thumbnails += thumbnailGenerator.generate(id);
+            }
+            posts += ids.size();
+            afterId = ids.get(ids.size() - 1);
+        }
+        log.info("Thumbnails of {} posts have been backfilled with {} new thumbnails.", posts, thumbnails);
+    }
+}
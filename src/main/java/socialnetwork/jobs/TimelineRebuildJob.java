@@ -0,0 +1,33 @@
+package socialnetwork.jobs;
+
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import socialnetwork.repositories.UserRepository;
+import socialnetwork.services.PostService;
+
+@Component
+@AllArgsConstructor
+@Slf4j
+@ConditionalOnProperty(name = "socialnetwork.jobs.rebuild-timelines", havingValue = "true")
+public class TimelineRebuildJob implements ApplicationRunner {
+
+    private static final long OWNERS_PER_BATCH = 1000;
+
+    private UserRepository userRepository;
+
+    private PostService postService;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        long maxId = userRepository.findMaxId().orElse(0L);
+        long entries = 0;
+        for(long from = 1; from <= maxId; from += OWNERS_PER_BATCH) {
+            entries += postService.rebuildTimelines(from, from + OWNERS_PER_BATCH - 1);
+        }
+        log.info("Timelines of users up to ID {} have been rebuilt with {} entries.", maxId, entries);
+    }
+}
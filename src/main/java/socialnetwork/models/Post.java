@@ -4,20 +4,33 @@ import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.annotations.SecondaryRow;
+import socialnetwork.ids.BlockIdGenerator;
 import socialnetwork.utils.TimeMachine;
 
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
 
+// Every post has its file row, so both tables are written with plain inserts and updates, which the JDBC batches can
+// take from many posts
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @Getter
 @Setter
 @NoArgsConstructor
 @Table(name = "posts")
 @SecondaryTable(name = "files", pkJoinColumns = @PrimaryKeyJoinColumn(name = "post_id"))
+@SecondaryRow(table = "files", optional = false)
 public class Post {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(generator = "posts")
+    @GenericGenerator(name = "posts", strategy = "socialnetwork.ids.BlockIdGenerator", parameters = @Parameter(name = BlockIdGenerator.TABLE, value = "posts"))
     private Long id;
 
     private String title;
@@ -39,12 +52,11 @@ public class Post {
         this.postFile = postFile;
     }
 
+    // The column keeps whole seconds, the copy in the persistence context and the second-level cache has to match it,
+    // otherwise a feed cursor taken from it would not find its own post
     @PrePersist
     public void setPostTime() {
-        if(TimeMachine.isSet()) {
-            this.postedOn = TimeMachine.now();
-        } else {
-            this.postedOn = LocalDateTime.now();
-        }
+        LocalDateTime now = TimeMachine.isSet() ? TimeMachine.now() : LocalDateTime.now();
+        this.postedOn = now.truncatedTo(ChronoUnit.SECONDS);
     }
 }
@@ -17,6 +17,15 @@ public class PostFile {
     @Column(table = "files", name = "mime_type")
     private String mimeType;
 
+    @Column(table = "files", name = "content_hash")
+    private String contentHash;
+
+    @Column(table = "files", name = "content_length")
+    private Long contentLength;
+
+    @Column(table = "files")
+    private Integer width;
+
     @Column(table = "files")
-    private byte[] content;
+    private Integer height;
 }
@@ -4,22 +4,34 @@ import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.annotations.SecondaryRow;
+import socialnetwork.ids.BlockIdGenerator;
 import socialnetwork.utils.TimeMachine;
 
 import java.time.LocalDateTime;
 import java.util.HashSet;
 import java.util.Set;
 
+// Every user has its personal data row, so both tables are written with plain inserts and updates, which the JDBC
+// batches can take from many users. An optional row would be upserted one by one.
 @Entity
 @Table(name = "users")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @NoArgsConstructor
 @Getter
 @Setter
 @SecondaryTable(name = "personal_data", pkJoinColumns = @PrimaryKeyJoinColumn(name = "user_id"))
+@SecondaryRow(table = "personal_data", optional = false)
 public class User {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(generator = "users")
+    @GenericGenerator(name = "users", strategy = "socialnetwork.ids.BlockIdGenerator", parameters = @Parameter(name = BlockIdGenerator.TABLE, value = "users"))
     private Long id;
 
     private String username;
@@ -34,6 +46,13 @@ public class User {
     @Column(name = "registered_on")
     private LocalDateTime registrationTime;
 
+    // The counters are maintained by the services with relative updates
+    @Column(insertable = false, updatable = false)
+    private int friendCount;
+
+    @Column(insertable = false, updatable = false)
+    private int postCount;
+
     @ManyToMany
     @JoinTable(name = "users_to_users",
             joinColumns = @JoinColumn(name = "user_id"),
@@ -1,13 +1,110 @@
 package socialnetwork.repositories;
 
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.transaction.annotation.Transactional;
 import socialnetwork.models.Post;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 public interface PostRepository extends JpaRepository<Post, Long> {
 
-    @Query("SELECT p FROM Post p LEFT JOIN FETCH p.user u LEFT JOIN FETCH u.friends f WHERE f.id = :friendsOf ORDER BY p.postedOn DESC")
-    List<Post> listPostsOfFriends(long friendsOf);
+    @Query("SELECT p FROM Post p JOIN FETCH p.user WHERE p.id IN :ids")
+    List<Post> findPostsWithUserByIds(Collection<Long> ids);
+
+    @Query(value = """
+            SELECT post_id FROM timelines
+            WHERE owner_id = :ownerId
+            ORDER BY posted_on DESC, post_id DESC LIMIT :limit
+            """, nativeQuery = true)
+    List<Long> listTimelinePostIds(long ownerId, int limit);
+
+    @Query(value = """
+            SELECT post_id FROM timelines
+            WHERE owner_id = :ownerId
+            AND (posted_on < :postedOn OR (posted_on = :postedOn AND post_id < :postId))
+            ORDER BY posted_on DESC, post_id DESC LIMIT :limit
+            """, nativeQuery = true)
+    List<Long> listTimelinePostIdsBefore(long ownerId, LocalDateTime postedOn, long postId, int limit);
+
+    @Modifying
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "timelines"))
+    @Query(value = """
+            INSERT INTO timelines (owner_id, post_id, posted_on)
+            SELECT uu.friend_id, p.id, p.posted_on FROM posts p JOIN users_to_users uu ON uu.user_id = p.user_id
+            WHERE p.id = :postId
+            """, nativeQuery = true)
+    int fanOutPost(long postId);
+
+    @Modifying
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "timelines"))
+    @Query(value = """
+            INSERT INTO timelines (owner_id, post_id, posted_on)
+            SELECT :ownerId, p.id, p.posted_on FROM posts p WHERE p.user_id = :authorId
+            """, nativeQuery = true)
+    int copyPostsToTimeline(long ownerId, long authorId);
+
+    @Modifying
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "timelines"))
+    @Query(value = """
+            DELETE FROM timelines
+            WHERE owner_id = :ownerId AND post_id IN (SELECT p.id FROM posts p WHERE p.user_id = :authorId)
+            """, nativeQuery = true)
+    int removePostsFromTimeline(long ownerId, long authorId);
+
+    @Modifying
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "timelines"))
+    @Query(value = "DELETE FROM timelines WHERE owner_id BETWEEN :fromOwnerId AND :toOwnerId", nativeQuery = true)
+    int clearTimelines(long fromOwnerId, long toOwnerId);
+
+    @Modifying
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "timelines"))
+    @Query(value = """
+            INSERT INTO timelines (owner_id, post_id, posted_on)
+            SELECT uu.user_id, p.id, p.posted_on FROM users_to_users uu JOIN posts p ON p.user_id = uu.friend_id
+            WHERE uu.user_id BETWEEN :fromOwnerId AND :toOwnerId
+            """, nativeQuery = true)
+    int fillTimelines(long fromOwnerId, long toOwnerId);
+
+    @Query(value = "SELECT content_hash FROM thumbnails WHERE post_id = :postId AND variant = :variant", nativeQuery = true)
+    Optional<String> findThumbnailHash(long postId, String variant);
+
+    @Query(value = "SELECT content_hash FROM thumbnails WHERE post_id = :postId", nativeQuery = true)
+    List<String> listThumbnailHashes(long postId);
+
+    @Query(value = """
+            SELECT p.id FROM posts p
+            WHERE p.id > :afterId AND (SELECT COUNT(*) FROM thumbnails t WHERE t.post_id = p.id) < :variants
+            ORDER BY p.id LIMIT :limit
+            """, nativeQuery = true)
+    List<Long> listPostIdsWithoutThumbnails(long afterId, int variants, int limit);
+
+    @Modifying
+    @Transactional
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "thumbnails"))
+    @Query(value = """
+            INSERT INTO thumbnails (post_id, variant, content_hash, content_length, width, height)
+            SELECT p.id, :variant, :contentHash, :contentLength, :width, :height FROM posts p
+            WHERE p.id = :postId AND NOT EXISTS (SELECT 1 FROM thumbnails t WHERE t.post_id = p.id AND t.variant = :variant)
+            """, nativeQuery = true)
+    int saveThumbnail(long postId, String variant, String contentHash, long contentLength, int width, int height);
+
+    @Modifying
+    @Transactional
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "files"))
+    @Query(value = "UPDATE files SET width = :width, height = :height WHERE post_id = :postId AND width IS NULL", nativeQuery = true)
+    int saveDimensions(long postId, int width, int height);
+
+    @Query(value = """
+            SELECT f.content_hash FROM files f WHERE f.content_hash IN (:hashes)
+            UNION SELECT t.content_hash FROM thumbnails t WHERE t.content_hash IN (:hashes)
+            """, nativeQuery = true)
+    List<String> findReferencedHashes(Collection<String> hashes);
 }
@@ -1,25 +1,181 @@
 package socialnetwork.repositories;
 
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import socialnetwork.dtos.FriendSummaryDto;
+import socialnetwork.dtos.UserDto;
 import socialnetwork.models.User;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 public interface UserRepository extends JpaRepository<User, Long> {
 
+    // The searches have their own query cache region, which is only made stale by the changes of the users. The counters
+    // change with every friendship and post, so they are not part of the search results, they are read separately.
+    String SEARCH_REGION = "socialnetwork.user-search";
+
+    // The counter updates only declare this space, so they leave the cached users and searches alone
+    String COUNTER_SPACE = "user_counters";
+
+    String COUNTER_REGION = "socialnetwork.user-counters";
+
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = SEARCH_REGION)
+    })
+    @Query("""
+            SELECT new socialnetwork.dtos.UserDto(u.id, u.username, u.email, u.password, u.registrationTime, u.personalData)
+            FROM User u
+            WHERE u.id > :afterId
+            AND (:username IS NULL OR u.username LIKE %:username%)
+            AND (:email IS NULL OR u.email LIKE %:email%)
+            AND (:registeredAfter IS NULL OR u.registrationTime >= :registeredAfter)
+            AND (:realName IS NULL OR u.personalData.realName LIKE %:realName%)
+            AND (:city IS NULL OR u.personalData.city = :city)
+            ORDER BY u.id
+            """)
+    List<UserDto> findUsersByParams(long afterId, String username, String email, LocalDateTime registeredAfter, String realName, String city, Pageable pageable);
+
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = SEARCH_REGION)
+    })
+    @Query("""
+            SELECT new socialnetwork.dtos.UserDto(u.id, u.username, u.email, u.password, u.registrationTime, u.personalData)
+            FROM User u
+            WHERE u.id IN :ids AND u.id > :afterId
+            AND (:username IS NULL OR u.username LIKE %:username%)
+            AND (:email IS NULL OR u.email LIKE %:email%)
+            AND (:registeredAfter IS NULL OR u.registrationTime >= :registeredAfter)
+            AND (:realName IS NULL OR u.personalData.realName LIKE %:realName%)
+            AND (:city IS NULL OR u.personalData.city = :city)
+            ORDER BY u.id
+            """)
+    List<UserDto> findUsersByIdsAndParams(Collection<Long> ids, long afterId, String username, String email, LocalDateTime registeredAfter, String realName, String city, Pageable pageable);
+
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = SEARCH_REGION)
+    })
     @Query("""
-            SELECT u FROM User u LEFT JOIN FETCH u.friends
+            SELECT COUNT(u) FROM User u
             WHERE (:username IS NULL OR u.username LIKE %:username%)
-            AND (:email IS NULL OR u.email LIKE %:email%) 
-            AND (u.registrationTime >= COALESCE(:registeredAfter, u.registrationTime)) 
-            AND (:realName IS NULL OR u.personalData.realName LIKE %:realName%) 
+            AND (:email IS NULL OR u.email LIKE %:email%)
+            AND (:registeredAfter IS NULL OR u.registrationTime >= :registeredAfter)
+            AND (:realName IS NULL OR u.personalData.realName LIKE %:realName%)
+            AND (:city IS NULL OR u.personalData.city = :city)
+            """)
+    long countUsersByParams(String username, String email, LocalDateTime registeredAfter, String realName, String city);
+
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = SEARCH_REGION)
+    })
+    @Query("""
+            SELECT COUNT(u) FROM User u
+            WHERE u.id IN :ids
+            AND (:username IS NULL OR u.username LIKE %:username%)
+            AND (:email IS NULL OR u.email LIKE %:email%)
+            AND (:registeredAfter IS NULL OR u.registrationTime >= :registeredAfter)
+            AND (:realName IS NULL OR u.personalData.realName LIKE %:realName%)
             AND (:city IS NULL OR u.personalData.city = :city)
             """)
-    List<User> findUsersByParams(String username, String email, LocalDateTime registeredAfter, String realName, String city);
+    long countUsersByIdsAndParams(Collection<Long> ids, String username, String email, LocalDateTime registeredAfter, String realName, String city);
+
+    @Query("""
+            SELECT new socialnetwork.dtos.UserDto(u.id, u.username, u.email, u.password, u.registrationTime, u.personalData, u.friendCount, u.postCount)
+            FROM User u
+            WHERE u.id IN :ids
+            """)
+    List<UserDto> findUserDtosByIds(Collection<Long> ids);
+
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = COUNTER_REGION),
+            @QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = COUNTER_SPACE)
+    })
+    @Query(value = "SELECT id, friend_count, post_count FROM users WHERE id IN (:userIds)", nativeQuery = true)
+    List<Object[]> findCountersOfUsers(Collection<Long> userIds);
+
+    @Query(value = "SELECT user_id, friend_id FROM users_to_users WHERE user_id IN (:userIds)", nativeQuery = true)
+    List<Object[]> findFriendIdsOfUsers(Collection<Long> userIds);
 
     @Query("SELECT u FROM User u LEFT JOIN FETCH u.friends f LEFT JOIN FETCH f.friends WHERE u.id = :userId")
     Optional<User> findUserWithFriendsById(long userId);
+
+    @Query("""
+            SELECT new socialnetwork.dtos.FriendSummaryDto(f.id, f.username, f.personalData.city)
+            FROM User u JOIN u.friends f
+            WHERE u.id = :userId AND f.id > :afterId
+            ORDER BY f.id
+            """)
+    List<FriendSummaryDto> listFriendSummaries(long userId, long afterId, Pageable pageable);
+
+    @Query("SELECT MAX(u.id) FROM User u")
+    Optional<Long> findMaxId();
+
+    // The native writes name the table they change, otherwise Hibernate would clear every second-level cache region
+    @Modifying
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "users_to_users"))
+    @Query(value = """
+            INSERT IGNORE INTO users_to_users (user_id, friend_id)
+            SELECT :userId, :friendId FROM users u WHERE u.id = :userId
+            """, nativeQuery = true)
+    int insertFriendship(long userId, long friendId);
+
+    @Modifying
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "users_to_users"))
+    @Query(value = "DELETE FROM users_to_users WHERE user_id = :userId AND friend_id = :friendId", nativeQuery = true)
+    int deleteFriendship(long userId, long friendId);
+
+    @Modifying
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "users_to_users"))
+    @Query(value = "DELETE FROM users_to_users WHERE user_id = :userId", nativeQuery = true)
+    int deleteFriendshipsOfUser(long userId);
+
+    // A single delete with both columns in an OR could not search the two indexes
+    @Modifying
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "users_to_users"))
+    @Query(value = "DELETE FROM users_to_users WHERE friend_id = :userId", nativeQuery = true)
+    int deleteFriendshipsToUser(long userId);
+
+    // The users whose counters have changed are evicted by EntityCacheEvictor
+    @Modifying
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = COUNTER_SPACE))
+    @Query(value = "UPDATE users SET friend_count = friend_count + :delta WHERE id IN (:userId, :friendId)", nativeQuery = true)
+    int adjustFriendCounts(long userId, long friendId, int delta);
+
+    @Modifying
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = COUNTER_SPACE))
+    @Query(value = "UPDATE users SET friend_count = friend_count - 1 WHERE id IN (SELECT uu.friend_id FROM users_to_users uu WHERE uu.user_id = :userId)", nativeQuery = true)
+    int decrementFriendCountsOfFriends(long userId);
+
+    @Modifying
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = COUNTER_SPACE))
+    @Query(value = "UPDATE users SET post_count = post_count + :delta WHERE id = :userId", nativeQuery = true)
+    int adjustPostCount(long userId, int delta);
+
+    // Run in bulk at startup only, so it may clear every cached user
+    @Modifying
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "users"),
+            @QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = COUNTER_SPACE)
+    })
+    @Query(value = """
+            UPDATE users u SET
+                friend_count = (SELECT COUNT(*) FROM users_to_users uu WHERE uu.user_id = u.id),
+                post_count = (SELECT COUNT(*) FROM posts p WHERE p.user_id = u.id)
+            WHERE u.id BETWEEN :fromId AND :toId
+            AND (u.friend_count <> (SELECT COUNT(*) FROM users_to_users uu WHERE uu.user_id = u.id)
+                OR u.post_count <> (SELECT COUNT(*) FROM posts p WHERE p.user_id = u.id))
+            """, nativeQuery = true)
+    int reconcileCounters(long fromId, long toId);
 }
@@ -0,0 +1,317 @@
+package socialnetwork.search;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import socialnetwork.services.UserChangedEvent;
+import socialnetwork.services.UserDeletedEvent;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+@Component
+@Slf4j
+public class TrigramIndex {
+
+    private static final int USERNAME = 0;
+
+    private static final int EMAIL = 1;
+
+    private static final int REAL_NAME = 2;
+
+    private static final int FIELD_COUNT = 3;
+
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+
+    private static final Pattern LIKE_WILDCARDS = Pattern.compile("[%_]+");
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final int maxCandidates;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private Index index = new Index();
+
+    public TrigramIndex(JdbcTemplate jdbcTemplate, @Value("${socialnetwork.search.max-candidates}") int maxCandidates) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.maxCandidates = maxCandidates;
+    }
+
+    @PostConstruct
+    public void reload() {
+        Index loaded = new Index();
+        jdbcTemplate.query("SELECT u.id, u.username, u.email, pd.real_name FROM users u LEFT JOIN personal_data pd ON pd.user_id = u.id ORDER BY u.id",
+                (RowCallbackHandler) rs -> loaded.add(rs.getLong(1), normalizedFields(rs.getString(2), rs.getString(3), rs.getString(4))));
+        lock.writeLock().lock();
+        try {
+            index = loaded;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Trigram index has been loaded with {} users.", loaded.values.size());
+    }
+
+    // Returns the ids of the users whose fields contain every given substring, or null if the index can not narrow the search.
+    // Matching ignores case and accents, so the result is a superset of what LIKE finds and the database has to verify it.
+    public long[] findCandidates(String username, String email, String realName) {
+        String[][] segments = new String[FIELD_COUNT][];
+        segments[USERNAME] = segmentsOf(username);
+        segments[EMAIL] = segmentsOf(email);
+        segments[REAL_NAME] = segmentsOf(realName);
+        lock.readLock().lock();
+        try {
+            long[] candidates = null;
+            for(int field = 0; field < segments.length; field++) {
+                long[] matches = index.match(field, segments[field]);
+                if(matches != null) {
+                    candidates = candidates == null ? matches : intersect(candidates, candidates.length, matches, matches.length);
+                }
+            }
+            if(candidates == null) {
+                return null;
+            }
+            long[] verified = index.verify(candidates, segments);
+            return verified.length > maxCandidates ? null : verified;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void put(long userId, String username, String email, String realName) {
+        String[] values = normalizedFields(username, email, realName);
+        lock.writeLock().lock();
+        try {
+            index.remove(userId);
+            index.add(userId, values);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(long userId) {
+        lock.writeLock().lock();
+        try {
+            index.remove(userId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUserChanged(UserChangedEvent event) {
+        put(event.userId(), event.username(), event.email(), event.realName());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUserDeleted(UserDeletedEvent event) {
+        remove(event.userId());
+    }
+
+    private static String[] normalizedFields(String username, String email, String realName) {
+        String[] fields = new String[FIELD_COUNT];
+        fields[USERNAME] = normalize(username);
+        fields[EMAIL] = normalize(email);
+        fields[REAL_NAME] = normalize(realName);
+        return fields;
+    }
+
+    private static String normalize(String value) {
+        if(value == null) {
+            return null;
+        }
+        return COMBINING_MARKS.matcher(Normalizer.normalize(value, Normalizer.Form.NFD)).replaceAll("").toLowerCase(Locale.ROOT);
+    }
+
+    private static String[] segmentsOf(String query) {
+        if(query == null) {
+            return null;
+        }
+        return Arrays.stream(LIKE_WILDCARDS.split(normalize(query)))
+                .filter(segment -> !segment.isEmpty())
+                .toArray(String[]::new);
+    }
+
+    private static long[] trigramsOf(String value) {
+        if(value == null || value.length() < 3) {
+            return new long[0];
+        }
+        long[] trigrams = new long[value.length() - 2];
+        for(int i = 0; i < trigrams.length; i++) {
+            trigrams[i] = (long) value.charAt(i) << 32 | (long) value.charAt(i + 1) << 16 | value.charAt(i + 2);
+        }
+        Arrays.sort(trigrams);
+        int size = 0;
+        for(int i = 0; i < trigrams.length; i++) {
+            if(size == 0 || trigrams[size - 1] != trigrams[i]) {
+                trigrams[size++] = trigrams[i];
+            }
+        }
+        return Arrays.copyOf(trigrams, size);
+    }
+
+    private static long[] intersect(long[] a, int sizeA, long[] b, int sizeB) {
+        long[] result = new long[Math.min(sizeA, sizeB)];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while(i < sizeA && j < sizeB) {
+            if(a[i] < b[j]) {
+                i++;
+            } else if(a[i] > b[j]) {
+                j++;
+            } else {
+                result[size++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return size == result.length ? result : Arrays.copyOf(result, size);
+    }
+
+    private static class Index {
+
+        @SuppressWarnings("unchecked")
+        private final Map<Long, PostingList>[] postings = new Map[FIELD_COUNT];
+
+        Index() {
+            for(int field = 0; field < FIELD_COUNT; field++) {
+                postings[field] = new HashMap<>();
+            }
+        }
+
+        private final Map<Long, String[]> values = new HashMap<>();
+
+        void add(long userId, String[] userValues) {
+            values.put(userId, userValues);
+            for(int field = 0; field < userValues.length; field++) {
+                for(long trigram : trigramsOf(userValues[field])) {
+                    postings[field].computeIfAbsent(trigram, key -> new PostingList()).add(userId);
+                }
+            }
+        }
+
+        void remove(long userId) {
+            String[] userValues = values.remove(userId);
+            if(userValues == null) {
+                return;
+            }
+            for(int field = 0; field < userValues.length; field++) {
+                for(long trigram : trigramsOf(userValues[field])) {
+                    PostingList list = postings[field].get(trigram);
+                    if(list != null && list.remove(userId) && list.size == 0) {
+                        postings[field].remove(trigram);
+                    }
+                }
+            }
+        }
+
+        long[] match(int field, String[] segments) {
+            if(segments == null) {
+                return null;
+            }
+            List<PostingList> lists = new ArrayList<>();
+            for(String segment : segments) {
+                for(long trigram : trigramsOf(segment)) {
+                    PostingList list = postings[field].get(trigram);
+                    if(list == null) {
+                        return new long[0];
+                    }
+                    lists.add(list);
+                }
+            }
+            if(lists.isEmpty()) {
+                return null;
+            }
+            lists.sort(Comparator.comparingInt(list -> list.size));
+            PostingList smallest = lists.get(0);
+            long[] result = Arrays.copyOf(smallest.ids, smallest.size);
+            for(int i = 1; i < lists.size() && result.length > 0; i++) {
+                result = intersect(result, result.length, lists.get(i).ids, lists.get(i).size);
+            }
+            return result;
+        }
+
+        long[] verify(long[] candidates, String[][] segments) {
+            long[] verified = new long[candidates.length];
+            int size = 0;
+            for(long candidate : candidates) {
+                String[] userValues = values.get(candidate);
+                if(userValues != null && containsAll(userValues, segments)) {
+                    verified[size++] = candidate;
+                }
+            }
+            return Arrays.copyOf(verified, size);
+        }
+
+        private static boolean containsAll(String[] userValues, String[][] segments) {
+            for(int field = 0; field < segments.length; field++) {
+                if(segments[field] == null) {
+                    continue;
+                }
+                if(userValues[field] == null) {
+                    return false;
+                }
+                for(String segment : segments[field]) {
+                    if(!userValues[field].contains(segment)) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+    }
+
+    private static class PostingList {
+
+        private long[] ids = new long[4];
+
+        private int size;
+
+        void add(long userId) {
+            if(size == 0 || ids[size - 1] < userId) {
+                ensureCapacity();
+                ids[size++] = userId;
+                return;
+            }
+            int index = Arrays.binarySearch(ids, 0, size, userId);
+            if(index >= 0) {
+                return;
+            }
+            int position = -index - 1;
+            ensureCapacity();
+            System.arraycopy(ids, position, ids, position + 1, size - position);
+            ids[position] = userId;
+            size++;
+        }
+
+        boolean remove(long userId) {
+            int index = Arrays.binarySearch(ids, 0, size, userId);
+            if(index < 0) {
+                return false;
+            }
+            System.arraycopy(ids, index + 1, ids, index, size - index - 1);
+            size--;
+            return true;
+        }
+
+        private void ensureCapacity() {
+            if(size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+        }
+    }
+}
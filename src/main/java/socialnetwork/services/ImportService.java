@@ -0,0 +1,380 @@
+package socialnetwork.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.validation.Validator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.validation.BeanPropertyBindingResult;
+import org.springframework.validation.Errors;
+import org.springframework.validation.beanvalidation.SpringValidatorAdapter;
+import socialnetwork.cache.Change;
+import socialnetwork.cache.ChangeLog;
+import socialnetwork.dtos.CreateUserCommand;
+import socialnetwork.dtos.ImportErrorDto;
+import socialnetwork.dtos.ImportProgressDto;
+import socialnetwork.dtos.ImportRelationshipCommand;
+import socialnetwork.exceptions.EntityNotFoundException;
+import socialnetwork.exceptions.SameUserRelationshipException;
+import socialnetwork.ids.IdBlockAllocator;
+import socialnetwork.models.User;
+import socialnetwork.utils.TimeMachine;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+@Service
+public class ImportService {
+
+    private static final String INSERT_USER = "INSERT INTO users (id, username, email, password, registered_on) VALUES (?, ?, ?, ?, ?)";
+
+    private static final String INSERT_PERSONAL_DATA = "INSERT INTO personal_data (user_id) VALUES (?)";
+
+    private static final String INSERT_FRIENDSHIP = "INSERT INTO users_to_users (user_id, friend_id) VALUES (?, ?)";
+
+    private static final String ADD_FRIEND_COUNT = "UPDATE users SET friend_count = friend_count + ? WHERE id = ?";
+
+    private static final String COPY_POSTS_TO_TIMELINE = """
+            INSERT INTO timelines (owner_id, post_id, posted_on)
+            SELECT ?, p.id, p.posted_on FROM posts p WHERE p.user_id = ?
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final IdBlockAllocator idBlockAllocator;
+
+    private final UserService userService;
+
+    private final RelationshipService relationshipService;
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final ChangeLog changeLog;
+
+    private final ObjectMapper objectMapper;
+
+    private final SpringValidatorAdapter validator;
+
+    private final int batchSize;
+
+    public ImportService(JdbcTemplate jdbcTemplate, NamedParameterJdbcTemplate namedJdbcTemplate, TransactionTemplate transactionTemplate,
+                         IdBlockAllocator idBlockAllocator, UserService userService, RelationshipService relationshipService,
+                         ApplicationEventPublisher eventPublisher, ChangeLog changeLog, ObjectMapper objectMapper, Validator validator,
+                         @Value("${socialnetwork.import.batch-size}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedJdbcTemplate = namedJdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.idBlockAllocator = idBlockAllocator;
+        this.userService = userService;
+        this.relationshipService = relationshipService;
+        this.eventPublisher = eventPublisher;
+        this.changeLog = changeLog;
+        this.objectMapper = objectMapper;
+        this.validator = new SpringValidatorAdapter(validator);
+        this.batchSize = batchSize;
+    }
+
+    public void importUsers(InputStream in, OutputStream out) {
+        importRows(in, new Report(out), CreateUserCommand.class, this::importUserChunk);
+    }
+
+    public void importRelationships(InputStream in, OutputStream out) {
+        importRows(in, new Report(out), ImportRelationshipCommand.class, this::importRelationshipChunk);
+    }
+
+    private <T> void importRows(InputStream in, Report report, Class<T> type, ChunkImporter<T> importer) {
+        List<Row<T>> chunk = new ArrayList<>(batchSize);
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            long lineNumber = 0;
+            String line;
+            while((line = reader.readLine()) != null) {
+                lineNumber++;
+                if(line.isBlank()) {
+                    continue;
+                }
+                T value = parse(line, lineNumber, type, report);
+                if(value != null) {
+                    chunk.add(new Row<>(lineNumber, value));
+                }
+                if(chunk.size() == batchSize) {
+                    importer.importChunk(chunk, report);
+                    chunk.clear();
+                    report.progress(false);
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("I/O error occurred, when the import was reading.", e);
+        }
+        if(!chunk.isEmpty()) {
+            importer.importChunk(chunk, report);
+        }
+        report.progress(true);
+    }
+
+    private <T> T parse(String line, long lineNumber, Class<T> type, Report report) {
+        T value;
+        try {
+            value = objectMapper.readValue(line, type);
+        } catch (JsonProcessingException e) {
+            report.fail(lineNumber, "The line is not a valid JSON object.");
+            return null;
+        }
+        Errors errors = new BeanPropertyBindingResult(value, type.getSimpleName());
+        validator.validate(value, errors);
+        if(errors.hasFieldErrors()) {
+            report.fail(lineNumber, errors.getFieldError().getDefaultMessage());
+            return null;
+        }
+        return value;
+    }
+
+    private void importUserChunk(List<Row<CreateUserCommand>> rows, Report report) {
+        Set<String> usernames = new HashSet<>();
+        Set<String> emails = new HashSet<>();
+        for(Row<CreateUserCommand> row : rows) {
+            usernames.add(row.value().getUsername());
+            emails.add(row.value().getEmail());
+        }
+        Set<String> takenUsernames = new HashSet<>();
+        Set<String> takenEmails = new HashSet<>();
+        namedJdbcTemplate.query("SELECT username, email FROM users WHERE username IN (:usernames) OR email IN (:emails)",
+                Map.of("usernames", usernames, "emails", emails), rs -> {
+                    takenUsernames.add(rs.getString("username"));
+                    takenEmails.add(rs.getString("email"));
+                });
+        List<Row<CreateUserCommand>> accepted = new ArrayList<>(rows.size());
+        for(Row<CreateUserCommand> row : rows) {
+            CreateUserCommand command = row.value();
+            if(takenUsernames.contains(command.getUsername())) {
+                report.fail(row.line(), "The username is already in use: " + command.getUsername());
+            } else if(takenEmails.contains(command.getEmail())) {
+                report.fail(row.line(), "The email address is already in use: " + command.getEmail());
+            } else {
+                takenUsernames.add(command.getUsername());
+                takenEmails.add(command.getEmail());
+                accepted.add(row);
+            }
+        }
+        if(accepted.isEmpty()) {
+            return;
+        }
+        long firstId = idBlockAllocator.reserve("users", accepted.size());
+        Timestamp registrationTime = Timestamp.valueOf(TimeMachine.isSet() ? TimeMachine.now() : LocalDateTime.now());
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.batchUpdate(INSERT_USER, new RowSetter<>(accepted) {
+                    @Override
+                    void setValues(PreparedStatement ps, int i, CreateUserCommand command) throws SQLException {
+                        ps.setLong(1, firstId + i);
+                        ps.setString(2, command.getUsername());
+                        ps.setString(3, command.getEmail());
+                        ps.setString(4, UserService.hashPassword(command.getPassword()));
+                        ps.setTimestamp(5, registrationTime);
+                    }
+                });
+                jdbcTemplate.batchUpdate(INSERT_PERSONAL_DATA, new RowSetter<>(accepted) {
+                    @Override
+                    void setValues(PreparedStatement ps, int i, CreateUserCommand command) throws SQLException {
+                        ps.setLong(1, firstId + i);
+                    }
+                });
+                List<Change> changes = new ArrayList<>(accepted.size());
+                for(int i = 0; i < accepted.size(); i++) {
+                    changes.add(Change.user(firstId + i));
+                }
+                changeLog.record(changes);
+                for(int i = 0; i < accepted.size(); i++) {
+                    CreateUserCommand command = accepted.get(i).value();
+                    eventPublisher.publishEvent(new UserChangedEvent(firstId + i, command.getUsername(), command.getEmail(), null));
+                }
+            });
+            report.imported(accepted.size());
+        } catch (DataIntegrityViolationException e) {
+            // A concurrent registration took one of the names, the rows are retried one by one
+            for(Row<CreateUserCommand> row : accepted) {
+                try {
+                    userService.registration(row.value());
+                    report.imported(1);
+                } catch (DataIntegrityViolationException dive) {
+                    report.fail(row.line(), "The username or the email address is already in use.");
+                }
+            }
+        }
+    }
+
+    private void importRelationshipChunk(List<Row<ImportRelationshipCommand>> rows, Report report) {
+        Set<Long> ids = new HashSet<>();
+        for(Row<ImportRelationshipCommand> row : rows) {
+            ids.add(row.value().getUserId());
+            ids.add(row.value().getFriendId());
+        }
+        Set<Long> existingIds = new HashSet<>(namedJdbcTemplate.queryForList("SELECT id FROM users WHERE id IN (:ids)", Map.of("ids", ids), Long.class));
+        List<Row<ImportRelationshipCommand>> accepted = new ArrayList<>(rows.size());
+        Set<Edge> edges = new LinkedHashSet<>();
+        for(Row<ImportRelationshipCommand> row : rows) {
+            long userId = row.value().getUserId();
+            long friendId = row.value().getFriendId();
+            if(userId == friendId) {
+                report.fail(row.line(), new SameUserRelationshipException().getMessage());
+            } else if(!existingIds.contains(userId) || !existingIds.contains(friendId)) {
+                report.fail(row.line(), new EntityNotFoundException(User.class, existingIds.contains(userId) ? friendId : userId).getMessage());
+            } else {
+                accepted.add(row);
+                edges.add(Edge.of(userId, friendId));
+            }
+        }
+        if(accepted.isEmpty()) {
+            return;
+        }
+        List<Object[]> pairs = edges.stream().map(edge -> new Object[] {edge.userId(), edge.friendId()}).toList();
+        Set<Edge> existingEdges = new HashSet<>(namedJdbcTemplate.query("SELECT user_id, friend_id FROM users_to_users WHERE (user_id, friend_id) IN (:pairs)",
+                Map.of("pairs", pairs), (rs, i) -> new Edge(rs.getLong("user_id"), rs.getLong("friend_id"))));
+        List<Edge> directed = new ArrayList<>(edges.size() * 2);
+        Map<Long, Integer> addedFriends = new HashMap<>();
+        for(Edge edge : edges) {
+            if(!existingEdges.contains(edge)) {
+                directed.add(edge);
+                directed.add(new Edge(edge.friendId(), edge.userId()));
+                addedFriends.merge(edge.userId(), 1, Integer::sum);
+                addedFriends.merge(edge.friendId(), 1, Integer::sum);
+            }
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.batchUpdate(INSERT_FRIENDSHIP, directed, batchSize, (ps, edge) -> {
+                    ps.setLong(1, edge.userId());
+                    ps.setLong(2, edge.friendId());
+                });
+                jdbcTemplate.batchUpdate(COPY_POSTS_TO_TIMELINE, directed, batchSize, (ps, edge) -> {
+                    ps.setLong(1, edge.userId());
+                    ps.setLong(2, edge.friendId());
+                });
+                jdbcTemplate.batchUpdate(ADD_FRIEND_COUNT, addedFriends.entrySet(), batchSize, (ps, count) -> {
+                    ps.setInt(1, count.getValue());
+                    ps.setLong(2, count.getKey());
+                });
+                List<Change> changes = new ArrayList<>(directed.size() / 2);
+                for(int i = 0; i < directed.size(); i += 2) {
+                    changes.add(Change.friendship(directed.get(i).userId(), directed.get(i).friendId()));
+                }
+                changeLog.record(changes);
+                for(int i = 0; i < directed.size(); i += 2) {
+                    Edge edge = directed.get(i);
+                    eventPublisher.publishEvent(new RelationshipChangedEvent(edge.userId(), edge.friendId(), true));
+                }
+            });
+            report.imported(accepted.size());
+        } catch (DataIntegrityViolationException e) {
+            // A concurrent request saved one of the friendships, the rows are retried one by one
+            for(Row<ImportRelationshipCommand> row : accepted) {
+                try {
+                    relationshipService.saveRelationship(row.value().getUserId(), row.value().getFriendId());
+                    report.imported(1);
+                } catch (RuntimeException re) {
+                    report.fail(row.line(), re.getMessage());
+                }
+            }
+        }
+    }
+
+    private interface ChunkImporter<T> {
+        void importChunk(List<Row<T>> rows, Report report);
+    }
+
+    private record Row<T>(long line, T value) {
+    }
+
+    private record Edge(long userId, long friendId) {
+
+        static Edge of(long userId, long friendId) {
+            return new Edge(Math.min(userId, friendId), Math.max(userId, friendId));
+        }
+    }
+
+    private abstract static class RowSetter<T> implements BatchPreparedStatementSetter {
+
+        private final List<Row<T>> rows;
+
+        RowSetter(List<Row<T>> rows) {
+            this.rows = rows;
+        }
+
+        @Override
+        public void setValues(PreparedStatement ps, int i) throws SQLException {
+            setValues(ps, i, rows.get(i).value());
+        }
+
+        @Override
+        public int getBatchSize() {
+            return rows.size();
+        }
+
+        abstract void setValues(PreparedStatement ps, int i, T value) throws SQLException;
+    }
+
+    private class Report {
+
+        private final OutputStream out;
+
+        private long imported;
+
+        private long failed;
+
+        Report(OutputStream out) {
+            this.out = out;
+        }
+
+        void imported(int count) {
+            imported += count;
+        }
+
+        void fail(long line, String error) {
+            failed++;
+            write(new ImportErrorDto(line, error));
+        }
+
+        void progress(boolean finished) {
+            write(new ImportProgressDto(imported + failed, imported, failed, finished));
+            try {
+                out.flush();
+            } catch (IOException e) {
+                throw new IllegalStateException("I/O error occurred, when the import progress was writing.", e);
+            }
+        }
+
+        private void write(Object line) {
+            try {
+                out.write(objectMapper.writeValueAsBytes(line));
+                out.write('\n');
+            } catch (IOException e) {
+                throw new IllegalStateException("I/O error occurred, when the import progress was writing.", e);
+            }
+        }
+    }
+}
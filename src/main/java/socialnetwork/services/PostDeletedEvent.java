@@ -0,0 +1,4 @@
+package socialnetwork.services;
+
+public record PostDeletedEvent(long postId, long userId) {
+}
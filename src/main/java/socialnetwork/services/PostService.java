@@ -1,74 +1,148 @@
 package socialnetwork.services;
 
 import lombok.AllArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Service;
-import org.springframework.web.multipart.MultipartFile;
+import org.springframework.transaction.annotation.Transactional;
+import socialnetwork.cache.Change;
+import socialnetwork.cache.ChangeLog;
 import socialnetwork.dtos.ContentDto;
 import socialnetwork.dtos.CreatePostCommand;
 import socialnetwork.dtos.PostDataDto;
+import socialnetwork.dtos.PostPageDto;
+import socialnetwork.dtos.UploadedFile;
 import socialnetwork.exceptions.EntityNotFoundException;
+import socialnetwork.exceptions.InvalidThumbnailSizeException;
 import socialnetwork.models.Post;
 import socialnetwork.models.PostFile;
 import socialnetwork.models.User;
 import socialnetwork.repositories.PostRepository;
 import socialnetwork.repositories.UserRepository;
+import socialnetwork.storage.ContentCache;
+import socialnetwork.storage.StoredBlob;
+import socialnetwork.thumbnails.ThumbnailProperties;
 import socialnetwork.utils.DtoMapper;
+import socialnetwork.utils.FeedCursor;
 
-import java.io.IOException;
-import java.io.InputStream;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 @AllArgsConstructor
 public class PostService {
 
+    private static final int MAX_PAGE_SIZE = 100;
+
     private PostRepository postRepository;
 
+    private ContentCache contentCache;
+
     private UserRepository userRepository;
 
     private DtoMapper mapper;
 
+    private ThumbnailProperties thumbnailProperties;
+
+    private ApplicationEventPublisher eventPublisher;
+
+    private ChangeLog changeLog;
+
+    @Transactional
     public PostDataDto uploadPost(long userId, CreatePostCommand command) {
         User user = userRepository.findById(userId)
                 .orElseThrow(() -> new EntityNotFoundException(User.class, userId));
-        Post post = new Post(command.getTitle(), command.getDescription(), getPostFile(command));
+        Post post = new Post(command.getTitle(), command.getDescription(), storeFile(command.getFile()));
         post.setUser(user);
-        postRepository.save(post);
+        // The fan-out only declares the timelines table, so the post has to be written before it is read there
+        postRepository.saveAndFlush(post);
+        postRepository.fanOutPost(post.getId());
+        userRepository.adjustPostCount(userId, 1);
+        changeLog.record(Change.post(post.getId(), userId));
+        eventPublisher.publishEvent(new PostUploadedEvent(post.getId(), userId));
         return mapper.postToDto(post);
     }
 
-    public ContentDto downloadContent(long postId) {
+    @Transactional(readOnly = true)
+    public ContentDto getContentOfPost(long postId, String size) {
         Post post = postRepository.findById(postId)
                 .orElseThrow(() -> new EntityNotFoundException(Post.class, postId));
-        return mapper.postToContent(post);
+        PostFile file = post.getPostFile();
+        if(size == null) {
+            return new ContentDto(file.getFilename(), file.getMimeType(), file.getContentHash(), post.getPostedOn(), false);
+        }
+        if(!thumbnailProperties.getSizes().containsKey(size)) {
+            throw new InvalidThumbnailSizeException(size, thumbnailProperties.getSizes().keySet());
+        }
+        return postRepository.findThumbnailHash(postId, size)
+                .map(hash -> new ContentDto(file.getFilename(), file.getMimeType(), hash, post.getPostedOn(), false))
+                .orElseGet(() -> new ContentDto(file.getFilename(), file.getMimeType(), file.getContentHash(), post.getPostedOn(), true));
+    }
+
+    public Resource loadContent(String contentHash) {
+        return contentCache.load(contentHash);
     }
 
-    public List<PostDataDto> listOrderedPostsOfFriends(long friendsOf) {
-        if(userRepository.existsById(friendsOf)) {
-            return mapper.postsToDtoList(postRepository.listPostsOfFriends(friendsOf));
+    @Transactional(readOnly = true)
+    public PostPageDto listOrderedPostsOfFriends(long friendsOf, int limit, String next) {
+        if(!userRepository.existsById(friendsOf)) {
+            throw new EntityNotFoundException(User.class, friendsOf);
         }
-        throw new EntityNotFoundException(User.class, friendsOf);
+        int pageSize = Math.min(Math.max(limit, 1), MAX_PAGE_SIZE);
+        List<Long> ids;
+        if(next == null) {
+            ids = postRepository.listTimelinePostIds(friendsOf, pageSize + 1);
+        } else {
+            FeedCursor cursor = FeedCursor.decode(next);
+            ids = postRepository.listTimelinePostIdsBefore(friendsOf, cursor.postedOn(), cursor.id(), pageSize + 1);
+        }
+        if(ids.isEmpty()) {
+            return new PostPageDto(List.of(), null);
+        }
+        List<Long> pageIds = ids.subList(0, Math.min(ids.size(), pageSize));
+        Map<Long, Post> posts = postRepository.findPostsWithUserByIds(pageIds).stream()
+                .collect(Collectors.toMap(Post::getId, Function.identity()));
+        List<Post> page = pageIds.stream()
+                .map(posts::get)
+                .filter(Objects::nonNull)
+                .toList();
+        if(ids.size() <= pageSize || page.isEmpty()) {
+            return new PostPageDto(mapper.postsToDtoList(page), null);
+        }
+        Post last = page.get(page.size() - 1);
+        return new PostPageDto(mapper.postsToDtoList(page), new FeedCursor(last.getPostedOn(), last.getId()).encode());
+    }
+
+    @Transactional
+    public int rebuildTimelines(long fromOwnerId, long toOwnerId) {
+        postRepository.clearTimelines(fromOwnerId, toOwnerId);
+        return postRepository.fillTimelines(fromOwnerId, toOwnerId);
     }
 
+    @Transactional(readOnly = true)
     public PostDataDto getPostById(long postId) {
         return mapper.postToDto(postRepository.findById(postId)
                 .orElseThrow(() -> new EntityNotFoundException(Post.class, postId)));
     }
 
+    @Transactional
     public void deletePost(long postId) {
-        if(postRepository.existsById(postId)) {
-            postRepository.deleteById(postId);
-            return;
-        }
-        throw new EntityNotFoundException(Post.class, postId);
+        Post post = postRepository.findById(postId)
+                .orElseThrow(() -> new EntityNotFoundException(Post.class, postId));
+        List<String> thumbnailHashes = postRepository.listThumbnailHashes(postId);
+        postRepository.delete(post);
+        userRepository.adjustPostCount(post.getUser().getId(), -1);
+        contentCache.evict(post.getPostFile().getContentHash());
+        thumbnailHashes.forEach(contentCache::evict);
+        changeLog.record(Change.post(postId, post.getUser().getId()));
+        eventPublisher.publishEvent(new PostDeletedEvent(postId, post.getUser().getId()));
     }
 
-    private PostFile getPostFile(CreatePostCommand command) {
-        MultipartFile file = command.getFile();
-        try (InputStream stream = file.getInputStream()) {
-            return new PostFile(file.getOriginalFilename(), file.getContentType(), stream.readAllBytes());
-        } catch (IOException ioe) {
-            throw new IllegalStateException("I/O error occurred, when the file was reading.", ioe);
-        }
+    private PostFile storeFile(UploadedFile file) {
+        StoredBlob blob = file.getContent().commit();
+        return new PostFile(file.getOriginalFilename(), file.getContentType(), blob.hash(), blob.length(), file.getWidth(), file.getHeight());
     }
 }
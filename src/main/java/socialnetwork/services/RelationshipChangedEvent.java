@@ -0,0 +1,4 @@
+package socialnetwork.services;
+
+public record RelationshipChangedEvent(long userId, long friendId, boolean added) {
+}
@@ -1,55 +1,175 @@
 package socialnetwork.services;
 
-import jakarta.transaction.Transactional;
 import lombok.AllArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import socialnetwork.cache.Change;
+import socialnetwork.cache.ChangeLog;
+import socialnetwork.dtos.DistanceDto;
+import socialnetwork.dtos.FriendPageDto;
+import socialnetwork.dtos.FriendSummaryDto;
+import socialnetwork.dtos.MutualFriendsDto;
+import socialnetwork.dtos.SuggestionDto;
+import socialnetwork.dtos.UserDto;
+import socialnetwork.graph.FriendRecommender;
+import socialnetwork.graph.FriendSuggestion;
+import socialnetwork.graph.FriendshipGraph;
+import socialnetwork.graph.SeparationFinder;
 import socialnetwork.exceptions.NoSuchRelationshipException;
 import socialnetwork.utils.DtoMapper;
 import socialnetwork.models.User;
 import socialnetwork.exceptions.EntityNotFoundException;
 import socialnetwork.exceptions.SameUserRelationshipException;
+import socialnetwork.repositories.PostRepository;
 import socialnetwork.repositories.UserRepository;
 import socialnetwork.dtos.RelationshipDto;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
 @Service
 @AllArgsConstructor
 public class RelationshipService {
 
+    private static final int MAX_SUGGESTIONS = 100;
+
+    private static final int MAX_FRIEND_PAGE_SIZE = 1000;
+
     private UserRepository userRepository;
 
+    private PostRepository postRepository;
+
     private DtoMapper mapper;
 
+    private FriendshipGraph friendshipGraph;
+
+    private FriendRecommender friendRecommender;
+
+    private SeparationFinder separationFinder;
+
+    private ApplicationEventPublisher eventPublisher;
 
+    private ChangeLog changeLog;
+
+
+    // Both directions of a pair write the lower id's row first, so concurrent requests for the same pair wait for each
+    // other on that row, and only the first one finds something to insert or delete
     @Transactional
     public RelationshipDto saveRelationship(long userId, long friendId) {
         if(userId == friendId) {
             throw new SameUserRelationshipException();
         }
-        User user = userRepository.findUserWithFriendsById(userId)
-                .orElseThrow(() -> new EntityNotFoundException(User.class, userId));
-        User friend = userRepository.findUserWithFriendsById(friendId)
-                .orElseThrow(() -> new EntityNotFoundException(User.class, friendId));
-        user.addFriend(friend);
-        return mapper.userToRelationship(user);
+        checkUserExists(userId);
+        checkUserExists(friendId);
+        if(userRepository.insertFriendship(Math.min(userId, friendId), Math.max(userId, friendId)) > 0) {
+            userRepository.insertFriendship(Math.max(userId, friendId), Math.min(userId, friendId));
+            userRepository.adjustFriendCounts(userId, friendId, 1);
+            postRepository.copyPostsToTimeline(userId, friendId);
+            postRepository.copyPostsToTimeline(friendId, userId);
+            changeLog.record(Change.friendship(userId, friendId));
+            eventPublisher.publishEvent(new RelationshipChangedEvent(userId, friendId, true));
+        }
+        return relationshipOf(userId, friendId);
     }
 
 
     @Transactional
     public void removeRelationship(long userId, long friendId) {
-        User user = userRepository.findUserWithFriendsById(userId)
-                .orElseThrow(() -> new EntityNotFoundException(User.class, userId));
-        User friend = userRepository.findUserWithFriendsById(friendId)
-                .orElseThrow(() -> new EntityNotFoundException(User.class, friendId));
-        if(user.getFriends().contains(friend)) {
-            user.getFriends().remove(friend);
-            friend.getFriends().remove(user);
+        checkUserExists(userId);
+        checkUserExists(friendId);
+        if(userRepository.deleteFriendship(Math.min(userId, friendId), Math.max(userId, friendId)) > 0) {
+            userRepository.deleteFriendship(Math.max(userId, friendId), Math.min(userId, friendId));
+            userRepository.adjustFriendCounts(userId, friendId, -1);
+            postRepository.removePostsFromTimeline(userId, friendId);
+            postRepository.removePostsFromTimeline(friendId, userId);
+            changeLog.record(Change.friendship(userId, friendId));
+            eventPublisher.publishEvent(new RelationshipChangedEvent(userId, friendId, false));
         } else {
             throw new NoSuchRelationshipException(userId, friendId);
         }
     }
 
+    @Transactional(readOnly = true)
     public RelationshipDto listFriendsOfUser(long userId) {
-        return mapper.userToRelationship(userRepository.findUserWithFriendsById(userId)
-                .orElseThrow(() -> new EntityNotFoundException(User.class, userId)));
+        checkUserExists(userId);
+        return relationshipOf(userId, null);
+    }
+
+    @Transactional(readOnly = true)
+    public FriendPageDto listFriendSummaries(long userId, int limit, Long after) {
+        checkUserExists(userId);
+        int pageSize = Math.min(Math.max(limit, 1), MAX_FRIEND_PAGE_SIZE);
+        List<FriendSummaryDto> friends = userRepository.listFriendSummaries(userId, after == null ? 0 : after, PageRequest.of(0, pageSize + 1));
+        if(friends.size() <= pageSize) {
+            return new FriendPageDto(userId, friends, null);
+        }
+        List<FriendSummaryDto> page = friends.subList(0, pageSize);
+        return new FriendPageDto(userId, page, page.get(pageSize - 1).getId());
+    }
+
+    @Transactional(readOnly = true)
+    public MutualFriendsDto listMutualFriends(long userId, long otherId) {
+        checkUserExists(userId);
+        checkUserExists(otherId);
+        long[] mutualFriends = friendRecommender.mutualFriends(userId, otherId);
+        return new MutualFriendsDto(userId, otherId, mutualFriends.length, Arrays.stream(mutualFriends).boxed().toList());
+    }
+
+    @Transactional(readOnly = true)
+    public List<SuggestionDto> suggestFriends(long userId, int limit) {
+        checkUserExists(userId);
+        List<FriendSuggestion> suggestions = friendRecommender.suggestFriends(userId, Math.min(Math.max(limit, 1), MAX_SUGGESTIONS));
+        Map<Long, String> usernames = userRepository.findAllById(suggestions.stream().map(FriendSuggestion::userId).toList()).stream()
+                .collect(Collectors.toMap(User::getId, User::getUsername));
+        return suggestions.stream()
+                .filter(suggestion -> usernames.containsKey(suggestion.userId()))
+                .map(suggestion -> new SuggestionDto(suggestion.userId(), usernames.get(suggestion.userId()), suggestion.mutualFriends()))
+                .toList();
+    }
+
+    @Transactional(readOnly = true)
+    public DistanceDto findDistance(long userId, long otherId, Integer maxDepth) {
+        checkUserExists(userId);
+        checkUserExists(otherId);
+        int depthLimit = maxDepth == null ? separationFinder.getMaxDepth() : Math.max(maxDepth, 1);
+        return separationFinder.findShortestPath(userId, otherId, depthLimit)
+                .map(path -> new DistanceDto(userId, otherId, path.length - 1, Arrays.stream(path).boxed().toList()))
+                .orElseGet(() -> new DistanceDto(userId, otherId, null, List.of()));
+    }
+
+    private void checkUserExists(long userId) {
+        if(!userRepository.existsById(userId)) {
+            throw new EntityNotFoundException(User.class, userId);
+        }
+    }
+
+    // The graph is updated after the commit, so a friendship saved in the current transaction is added here
+    private RelationshipDto relationshipOf(long userId, Long newFriendId) {
+        Set<Long> friendIds = friendIdsOf(userId);
+        if(newFriendId != null) {
+            friendIds.add(newFriendId);
+        }
+        if(friendIds.isEmpty()) {
+            return new RelationshipDto(userId, Set.of());
+        }
+        Set<UserDto> friends = userRepository.findUserDtosByIds(friendIds).stream()
+                .peek(friend -> {
+                    Set<Long> ids = friendIdsOf(friend.getId());
+                    if(newFriendId != null && friend.getId() == newFriendId) {
+                        ids.add(userId);
+                    }
+                    friend.setFriends(ids);
+                })
+                .collect(Collectors.toSet());
+        return new RelationshipDto(userId, friends);
+    }
+
+    private Set<Long> friendIdsOf(long userId) {
+        return Arrays.stream(friendshipGraph.friendsOf(userId)).boxed().collect(Collectors.toSet());
     }
 }
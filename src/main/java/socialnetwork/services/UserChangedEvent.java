@@ -0,0 +1,4 @@
+package socialnetwork.services;
+
+public record UserChangedEvent(long userId, String username, String email, String realName) {
+}
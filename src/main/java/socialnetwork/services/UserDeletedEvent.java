@@ -0,0 +1,4 @@
+package socialnetwork.services;
+
+public record UserDeletedEvent(long userId) {
+}
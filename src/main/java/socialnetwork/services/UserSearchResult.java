@@ -0,0 +1,8 @@
+package socialnetwork.services;
+
+import socialnetwork.dtos.UserDto;
+
+import java.util.List;
+
+public record UserSearchResult(List<UserDto> users, Long next, Long total) {
+}
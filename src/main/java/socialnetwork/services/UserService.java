@@ -1,9 +1,15 @@
 package socialnetwork.services;
 
-import jakarta.transaction.Transactional;
 import lombok.AllArgsConstructor;
 import org.apache.commons.codec.digest.DigestUtils;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import socialnetwork.cache.Change;
+import socialnetwork.cache.ChangeLog;
+import socialnetwork.cache.UserCache;
 import socialnetwork.dtos.CreateUserCommand;
 import socialnetwork.dtos.ModifyUserCommand;
 import socialnetwork.dtos.ModifyPersonalDataCommand;
@@ -13,40 +19,65 @@ import socialnetwork.models.PersonalData;
 import socialnetwork.models.RequestParameter;
 import socialnetwork.models.User;
 import socialnetwork.repositories.UserRepository;
+import socialnetwork.search.TrigramIndex;
 import socialnetwork.utils.DtoMapper;
 
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 
 @Service
 @AllArgsConstructor
 public class UserService {
 
+    private static final int MAX_USER_PAGE_SIZE = 1000;
+
     private UserRepository userRepository;
 
     private DtoMapper mapper;
 
+    private ApplicationEventPublisher eventPublisher;
+
+    private TrigramIndex trigramIndex;
+
+    private UserCache userCache;
+
+    private ChangeLog changeLog;
+
+    private TransactionTemplate transactionTemplate;
 
+
+    @Transactional
     public UserDto registration(CreateUserCommand command) {
-        String hashedPassword = new DigestUtils("SHA3-256").digestAsHex(command.getPassword());
-        User user = new User(command.getUsername(), command.getEmail(), hashedPassword);
+        User user = new User(command.getUsername(), command.getEmail(), hashPassword(command.getPassword()));
         user.setPersonalData(new PersonalData());
         userRepository.save(user);
+        changeLog.record(Change.user(user.getId()));
+        eventPublisher.publishEvent(new UserChangedEvent(user.getId(), user.getUsername(), user.getEmail(), null));
         return mapper.userToDto(user);
     }
 
+    // A cache hit doesn't open a transaction. A miss is loaded in a read-write one, which is sent to the primary: the
+    // profile is kept until the next change, so it must not be loaded from a lagging replica
     public UserDto getUserById(long userId) {
-        return mapper.userToDto(userRepository.findUserWithFriendsById(userId)
-                        .orElseThrow(() -> new EntityNotFoundException(User.class, userId))
-        );
+        return userCache.get(userId, id -> transactionTemplate.execute(status ->
+                mapper.userToDto(userRepository.findUserWithFriendsById(id)
+                        .orElseThrow(() -> new EntityNotFoundException(User.class, id)))
+        ));
     }
 
     @Transactional
     public void deleteUser(long userId) {
-        User user = userRepository.findUserWithFriendsById(userId)
+        User user = userRepository.findById(userId)
                         .orElseThrow(() -> new EntityNotFoundException(User.class, userId));
-        user.getFriends()
-                .forEach(f -> f.getFriends().remove(user));
-        userRepository.deleteById(userId);
+        userRepository.decrementFriendCountsOfFriends(userId);
+        userRepository.deleteFriendshipsOfUser(userId);
+        userRepository.deleteFriendshipsToUser(userId);
+        userRepository.delete(user);
+        changeLog.record(Change.user(userId));
+        eventPublisher.publishEvent(new UserDeletedEvent(userId));
     }
 
     @Transactional
@@ -57,6 +88,8 @@ public class UserService {
         pd.setRealName(command.getRealName());
         pd.setDateOfBirth(command.getDateOfBirth());
         pd.setCity(command.getCity());
+        changeLog.record(Change.user(userId));
+        eventPublisher.publishEvent(new UserChangedEvent(userId, user.getUsername(), user.getEmail(), pd.getRealName()));
         return mapper.userToDto(user);
     }
 
@@ -66,12 +99,78 @@ public class UserService {
                 .orElseThrow(() -> new EntityNotFoundException(User.class, userId));
         user.setEmail(command.getEmail());
         user.setPassword(command.getPassword());
+        changeLog.record(Change.user(userId));
+        eventPublisher.publishEvent(new UserChangedEvent(userId, user.getUsername(), user.getEmail(), user.getPersonalData().getRealName()));
         return mapper.userToDto(user);
     }
 
-    public List<UserDto> findUsersByParams(RequestParameter params) {
-        return mapper.usersToDtoList(
-                userRepository.findUsersByParams(params.getUsername(), params.getEmail(), params.getRegisteredAfter(), params.getRealName(), params.getCity())
-                );
+    @Transactional(readOnly = true)
+    public UserSearchResult findUsersByParams(RequestParameter params, int limit, Long after, boolean count, boolean withFriends) {
+        int pageSize = Math.min(Math.max(limit, 1), MAX_USER_PAGE_SIZE);
+        long afterId = after == null ? 0 : after;
+        PageRequest pageRequest = PageRequest.of(0, pageSize + 1);
+        long[] candidates = trigramIndex.findCandidates(params.getUsername(), params.getEmail(), params.getRealName());
+        List<UserDto> users;
+        Long total = null;
+        if(candidates == null) {
+            users = userRepository.findUsersByParams(afterId, params.getUsername(), params.getEmail(), params.getRegisteredAfter(), params.getRealName(), params.getCity(), pageRequest);
+            if(count) {
+                total = userRepository.countUsersByParams(params.getUsername(), params.getEmail(), params.getRegisteredAfter(), params.getRealName(), params.getCity());
+            }
+        } else {
+            List<Long> remaining = Arrays.stream(candidates).filter(id -> id > afterId).boxed().toList();
+            users = remaining.isEmpty() ? List.of() : userRepository.findUsersByIdsAndParams(remaining, afterId,
+                    params.getUsername(), params.getEmail(), params.getRegisteredAfter(), params.getRealName(), params.getCity(), pageRequest);
+            if(count) {
+                total = candidates.length == 0 ? 0 : userRepository.countUsersByIdsAndParams(Arrays.stream(candidates).boxed().toList(),
+                        params.getUsername(), params.getEmail(), params.getRegisteredAfter(), params.getRealName(), params.getCity());
+            }
+        }
+        Long next = null;
+        if(users.size() > pageSize) {
+            users = users.subList(0, pageSize);
+            next = users.get(pageSize - 1).getId();
+        }
+        addCounters(users);
+        if(withFriends) {
+            addFriendIds(users);
+        }
+        return new UserSearchResult(users, next, total);
+    }
+
+    private void addCounters(List<UserDto> users) {
+        if(users.isEmpty()) {
+            return;
+        }
+        Map<Long, UserDto> byId = new HashMap<>();
+        users.forEach(user -> byId.put(user.getId(), user));
+        for(Object[] row : userRepository.findCountersOfUsers(users.stream().map(UserDto::getId).toList())) {
+            UserDto user = byId.get(((Number) row[0]).longValue());
+            user.setFriendCount(((Number) row[1]).intValue());
+            user.setPostCount(((Number) row[2]).intValue());
+        }
+    }
+
+    private void addFriendIds(List<UserDto> users) {
+        if(users.isEmpty()) {
+            return;
+        }
+        Map<Long, UserDto> byId = new HashMap<>();
+        for(UserDto user : users) {
+            user.setFriends(new HashSet<>());
+            byId.put(user.getId(), user);
+        }
+        for(Object[] row : userRepository.findFriendIdsOfUsers(byId.keySet())) {
+            byId.get(((Number) row[0]).longValue()).getFriends().add(((Number) row[1]).longValue());
+        }
+    }
+
+    @Transactional
+    public int reconcileCounters(long fromId, long toId) {
+        return userRepository.reconcileCounters(fromId, toId);
+    }
+
+    static String hashPassword(String password) {
+        return new DigestUtils("SHA3-256").digestAsHex(password);
     }
 }
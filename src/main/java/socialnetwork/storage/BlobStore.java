@@ -0,0 +1,36 @@
+package socialnetwork.storage;
+
+import org.springframework.core.io.Resource;
+
+import java.io.InputStream;
+import java.time.Instant;
+import java.util.stream.Stream;
+
+public interface BlobStore {
+
+    StagedBlob stage(InputStream content);
+
+    Resource load(String hash);
+
+    boolean exists(String hash);
+
+    // The stream has to be closed
+    Stream<String> listUnusedSince(Instant time);
+
+    // Moves the blob out of the reach of the uploads unless it has been used since the time. An upload of the same
+    // content stores a new copy after that, so the retired blob can be deleted once it is found unreferenced.
+    boolean retireIfUnusedSince(String hash, Instant time);
+
+    // The blobs left retired by an interrupted sweep, the stream has to be closed
+    Stream<String> listRetired();
+
+    void restore(String hash);
+
+    void purge(String hash);
+
+    default StoredBlob store(InputStream content) {
+        try (StagedBlob blob = stage(content)) {
+            return blob.commit();
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package socialnetwork.storage;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import socialnetwork.repositories.PostRepository;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToIntFunction;
+import java.util.stream.Stream;
+
+// Deletes the blobs no post or thumbnail refers to. A blob is written before the row referring to it is committed,
+// so only the blobs unused for the whole grace period are collected. They are retired first, and the references are
+// checked again, because an upload that has found the blob just before may commit its row only now.
+@Component
+@Slf4j
+public class BlobSweeper implements MeterBinder, DisposableBean {
+
+    private static final int HASHES_PER_BATCH = 500;
+
+    private final BlobStore blobStore;
+
+    private final PostRepository postRepository;
+
+    private final ContentCache contentCache;
+
+    private final Duration sweepInterval;
+
+    private final Duration gracePeriod;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("blob-sweeper-"));
+
+    private final AtomicLong deleted = new AtomicLong();
+
+    public BlobSweeper(BlobStore blobStore, PostRepository postRepository, ContentCache contentCache,
+                       @Value("${socialnetwork.blob-store.sweep-interval}") Duration sweepInterval,
+                       @Value("${socialnetwork.blob-store.sweep-grace-period}") Duration gracePeriod) {
+        this.blobStore = blobStore;
+        this.postRepository = postRepository;
+        this.contentCache = contentCache;
+        this.sweepInterval = sweepInterval;
+        this.gracePeriod = gracePeriod;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        executor.scheduleWithFixedDelay(this::sweepSafely, sweepInterval.toMillis(), sweepInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    public int sweep() {
+        return sweep(Instant.now().minus(gracePeriod));
+    }
+
+    // A sweep that has been interrupted may have left retired blobs behind
+    public synchronized int sweep(Instant unusedSince) {
+        int count;
+        try(Stream<String> retired = blobStore.listRetired()) {
+            count = inBatches(retired, this::settle);
+        }
+        try(Stream<String> hashes = blobStore.listUnusedSince(unusedSince)) {
+            count += inBatches(hashes, batch -> sweepBatch(batch, unusedSince));
+        }
+        deleted.addAndGet(count);
+        return count;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("blob.store.swept", deleted, AtomicLong::get)
+                .description("The number of unreferenced blobs deleted from the blob store")
+                .register(registry);
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    private int sweepBatch(List<String> hashes, Instant unusedSince) {
+        Set<String> referenced = new HashSet<>(postRepository.findReferencedHashes(hashes));
+        List<String> retired = new ArrayList<>();
+        for(String hash : hashes) {
+            if(!referenced.contains(hash) && blobStore.retireIfUnusedSince(hash, unusedSince)) {
+                retired.add(hash);
+            }
+        }
+        return settle(retired);
+    }
+
+    private int settle(List<String> retired) {
+        if(retired.isEmpty()) {
+            return 0;
+        }
+        Set<String> referenced = new HashSet<>(postRepository.findReferencedHashes(retired));
+        int count = 0;
+        for(String hash : retired) {
+            if(referenced.contains(hash)) {
+                blobStore.restore(hash);
+            } else {
+                blobStore.purge(hash);
+                contentCache.evict(hash);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private int inBatches(Stream<String> hashes, ToIntFunction<List<String>> action) {
+        int count = 0;
+        List<String> batch = new ArrayList<>(HASHES_PER_BATCH);
+        Iterator<String> iterator = hashes.iterator();
+        while(iterator.hasNext()) {
+            batch.add(iterator.next());
+            if(batch.size() == HASHES_PER_BATCH || !iterator.hasNext()) {
+                count += action.applyAsInt(batch);
+                batch.clear();
+            }
+        }
+        return count;
+    }
+
+    private void sweepSafely() {
+        try {
+            int count = sweep();
+            log.info("{} unreferenced blobs have been deleted from the blob store.", count);
+        } catch (RuntimeException e) {
+            log.warn("The blob store could not be swept.", e);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package socialnetwork.storage;
+
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.converter.ResourceHttpMessageConverter;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+// Writes the cached contents from their buffers instead of copying them through an InputStream
+@Component
+public class ByteBufferResourceHttpMessageConverter extends ResourceHttpMessageConverter {
+
+    @Override
+    protected void writeContent(Resource resource, HttpOutputMessage outputMessage) throws IOException {
+        if(resource instanceof ByteBufferResource byteBufferResource) {
+            byteBufferResource.writeTo(outputMessage.getBody());
+            outputMessage.getBody().flush();
+        } else {
+            super.writeContent(resource, outputMessage);
+        }
+    }
+}
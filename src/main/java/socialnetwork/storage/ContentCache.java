@@ -0,0 +1,246 @@
+package socialnetwork.storage;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// The contents are kept in one direct buffer allocated at startup, so evicting a content frees its block right away
+// instead of leaving it to the garbage collector. A content being sent is leased until the end of the request, its
+// block is only reused after that, even if it has been evicted in the meantime.
+@Component
+public class ContentCache implements MeterBinder {
+
+    private final BlobStore blobStore;
+
+    private final ByteBuffer arena;
+
+    // The free blocks of the arena by their offset
+    private final TreeMap<Integer, Integer> freeBlocks = new TreeMap<>();
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long residentBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    private final AtomicLong leases = new AtomicLong();
+
+    public ContentCache(BlobStore blobStore, @Value("${socialnetwork.content-cache.max-size}") DataSize maxSize) {
+        this.blobStore = blobStore;
+        this.arena = ByteBuffer.allocateDirect(Math.toIntExact(maxSize.toBytes()));
+        if(arena.capacity() > 0) {
+            freeBlocks.put(0, arena.capacity());
+        }
+    }
+
+    public Resource load(String hash) {
+        Entry cached = acquire(hash);
+        if(cached != null) {
+            hits.incrementAndGet();
+            return lease(cached, hash);
+        }
+        misses.incrementAndGet();
+        Resource resource = blobStore.load(hash);
+        if(!resource.exists()) {
+            return resource;
+        }
+        try {
+            long length = resource.contentLength();
+            if(length == 0 || length > arena.capacity()) {
+                return resource;
+            }
+            Entry entry = reserve((int) length);
+            if(entry == null) {
+                return resource;
+            }
+            try {
+                read(resource, entry);
+            } catch (IOException | RuntimeException e) {
+                release(entry);
+                throw e;
+            }
+            put(hash, entry);
+            return lease(entry, hash);
+        } catch (IOException ioe) {
+            throw new IllegalStateException("I/O error occurred, when the content was reading: " + hash, ioe);
+        }
+    }
+
+    public synchronized void evict(String hash) {
+        Entry removed = entries.remove(hash);
+        if(removed != null) {
+            discard(removed);
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("content.cache.gets", hits, AtomicLong::get)
+                .tag("result", "hit")
+                .description("The number of content requests served from the cache")
+                .register(registry);
+        FunctionCounter.builder("content.cache.gets", misses, AtomicLong::get)
+                .tag("result", "miss")
+                .description("The number of content requests served from the blob store")
+                .register(registry);
+        FunctionCounter.builder("content.cache.evictions", evictions, AtomicLong::get)
+                .description("The number of contents evicted to stay within the size limit")
+                .register(registry);
+        Gauge.builder("content.cache.resident", this, ContentCache::getResidentBytes)
+                .baseUnit("bytes")
+                .description("The size of the arena blocks in use, including the evicted contents still being sent")
+                .register(registry);
+        Gauge.builder("content.cache.size", this, ContentCache::getEntryCount)
+                .description("The number of cached contents")
+                .register(registry);
+    }
+
+    public synchronized long getResidentBytes() {
+        return residentBytes;
+    }
+
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    private synchronized Entry acquire(String hash) {
+        Entry entry = entries.get(hash);
+        if(entry != null) {
+            entry.leases++;
+        }
+        return entry;
+    }
+
+    private synchronized void release(Entry entry) {
+        entry.leases--;
+        if(entry.leases == 0 && entry.evicted) {
+            free(entry);
+        }
+    }
+
+    // The returned entry is leased by the caller and isn't in the cache yet
+    private synchronized Entry reserve(int length) {
+        Integer offset = allocate(length);
+        Iterator<Entry> eldest = entries.values().iterator();
+        while(offset == null && eldest.hasNext()) {
+            Entry evicted = eldest.next();
+            eldest.remove();
+            evictions.incrementAndGet();
+            discard(evicted);
+            offset = allocate(length);
+        }
+        if(offset == null) {
+            return null;
+        }
+        residentBytes += length;
+        return new Entry(offset, length);
+    }
+
+    private synchronized void put(String hash, Entry entry) {
+        entry.evicted = false;
+        Entry previous = entries.put(hash, entry);
+        if(previous != null) {
+            discard(previous);
+        }
+    }
+
+    private void discard(Entry entry) {
+        entry.evicted = true;
+        if(entry.leases == 0) {
+            free(entry);
+        }
+    }
+
+    private Integer allocate(int length) {
+        for(Map.Entry<Integer, Integer> block : freeBlocks.entrySet()) {
+            int offset = block.getKey();
+            int blockLength = block.getValue();
+            if(blockLength >= length) {
+                freeBlocks.remove(offset);
+                if(blockLength > length) {
+                    freeBlocks.put(offset + length, blockLength - length);
+                }
+                return offset;
+            }
+        }
+        return null;
+    }
+
+    private void free(Entry entry) {
+        residentBytes -= entry.length;
+        int offset = entry.offset;
+        int length = entry.length;
+        Map.Entry<Integer, Integer> previous = freeBlocks.lowerEntry(offset);
+        if(previous != null && previous.getKey() + previous.getValue() == offset) {
+            offset = previous.getKey();
+            length += previous.getValue();
+        }
+        Integer next = freeBlocks.remove(entry.offset + entry.length);
+        if(next != null) {
+            length += next;
+        }
+        freeBlocks.put(offset, length);
+    }
+
+    // Outside a request nothing tells when the content has been sent, so it is copied to the heap
+    private Resource lease(Entry entry, String hash) {
+        ByteBuffer content = arena.slice(entry.offset, entry.length).asReadOnlyBuffer();
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if(attributes == null) {
+            ByteBuffer copy = ByteBuffer.allocate(entry.length).put(content).flip();
+            release(entry);
+            return new ByteBufferResource(copy, hash);
+        }
+        attributes.registerDestructionCallback(ContentCache.class.getName() + ".lease." + leases.incrementAndGet(),
+                () -> release(entry), RequestAttributes.SCOPE_REQUEST);
+        return new ByteBufferResource(content, hash);
+    }
+
+    private void read(Resource resource, Entry entry) throws IOException {
+        ByteBuffer buffer = arena.slice(entry.offset, entry.length);
+        try(ReadableByteChannel channel = resource.readableChannel()) {
+            while(buffer.hasRemaining()) {
+                if(channel.read(buffer) < 0) {
+                    throw new EOFException("The content is shorter than its reported length.");
+                }
+            }
+        }
+    }
+
+    private static class Entry {
+
+        private final int offset;
+
+        private final int length;
+
+        private int leases = 1;
+
+        private boolean evicted = true;
+
+        Entry(int offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package socialnetwork.storage;
+
+import org.apache.commons.codec.binary.Hex;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.stream.Stream;
+
+@Component
+@ConditionalOnProperty(name = "socialnetwork.blob-store.type", havingValue = "filesystem", matchIfMissing = true)
+public class FileSystemBlobStore implements BlobStore {
+
+    private static final int HASH_LENGTH = 64;
+
+    private final Path root;
+
+    private final Path incoming;
+
+    private final Path retired;
+
+    public FileSystemBlobStore(@Value("${socialnetwork.blob-store.root}") Path root) {
+        this.root = root.toAbsolutePath();
+        this.incoming = this.root.resolve("incoming");
+        this.retired = this.root.resolve("retired");
+        try {
+            Files.createDirectories(incoming);
+            Files.createDirectories(retired);
+        } catch (IOException ioe) {
+            throw new IllegalStateException("The blob store directory can not be created: " + root, ioe);
+        }
+    }
+
+    @Override
+    public StagedBlob stage(InputStream content) {
+        Path temp = null;
+        try {
+            temp = Files.createTempFile(incoming, "upload", ".tmp");
+            DigestInputStream stream = new DigestInputStream(content, MessageDigest.getInstance("SHA-256"));
+            long length = Files.copy(stream, temp, StandardCopyOption.REPLACE_EXISTING);
+            return new FileSystemStagedBlob(temp, Hex.encodeHexString(stream.getMessageDigest().digest()), length);
+        } catch (IOException ioe) {
+            deleteQuietly(temp);
+            throw new IllegalStateException("I/O error occurred, when the file was stored.", ioe);
+        } catch (NoSuchAlgorithmException nsae) {
+            deleteQuietly(temp);
+            throw new IllegalStateException("SHA-256 is not supported by the platform.", nsae);
+        } catch (RuntimeException re) {
+            deleteQuietly(temp);
+            throw re;
+        }
+    }
+
+    @Override
+    public Resource load(String hash) {
+        return new FileSystemResource(pathOf(hash));
+    }
+
+    @Override
+    public boolean exists(String hash) {
+        return Files.exists(pathOf(hash));
+    }
+
+    // A blob is used when it is written, or when an upload of the same content finds it
+    @Override
+    public Stream<String> listUnusedSince(Instant time) {
+        try {
+            return Files.find(root, 3, (path, attributes) -> attributes.isRegularFile()
+                            && !path.startsWith(incoming)
+                            && !path.startsWith(retired)
+                            && path.getFileName().toString().length() == HASH_LENGTH
+                            && attributes.lastModifiedTime().toInstant().isBefore(time))
+                    .map(path -> path.getFileName().toString());
+        } catch (IOException ioe) {
+            throw new IllegalStateException("I/O error occurred, when the blob store was listed.", ioe);
+        }
+    }
+
+    // The time is checked again after the move: an upload that has touched the blob before it was moved will refer
+    // to it, one that comes after the move does not find it and stores its own copy.
+    @Override
+    public boolean retireIfUnusedSince(String hash, Instant time) {
+        Path path = pathOf(hash);
+        Path target = retired.resolve(hash);
+        try {
+            if(!Files.getLastModifiedTime(path).toInstant().isBefore(time)) {
+                return false;
+            }
+            Files.move(path, target, StandardCopyOption.ATOMIC_MOVE);
+            if(!Files.getLastModifiedTime(target).toInstant().isBefore(time)) {
+                restore(hash);
+                return false;
+            }
+            return true;
+        } catch (NoSuchFileException e) {
+            return false;
+        } catch (IOException ioe) {
+            throw new IllegalStateException("I/O error occurred, when the blob " + hash + " was retired.", ioe);
+        }
+    }
+
+    @Override
+    public Stream<String> listRetired() {
+        try {
+            return Files.list(retired)
+                    .map(path -> path.getFileName().toString())
+                    .filter(name -> name.length() == HASH_LENGTH);
+        } catch (IOException ioe) {
+            throw new IllegalStateException("I/O error occurred, when the retired blobs were listed.", ioe);
+        }
+    }
+
+    // An upload may have stored a new copy in the meantime, it has the same content
+    @Override
+    public void restore(String hash) {
+        Path path = pathOf(hash);
+        Path source = retired.resolve(hash);
+        try {
+            Files.createDirectories(path.getParent());
+            Files.move(source, path, StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileAlreadyExistsException e) {
+            deleteQuietly(source);
+        } catch (NoSuchFileException ignored) {
+        } catch (IOException ioe) {
+            throw new IllegalStateException("I/O error occurred, when the blob " + hash + " was restored.", ioe);
+        }
+    }
+
+    @Override
+    public void purge(String hash) {
+        try {
+            Files.deleteIfExists(retired.resolve(hash));
+        } catch (IOException ioe) {
+            throw new IllegalStateException("I/O error occurred, when the blob " + hash + " was deleted.", ioe);
+        }
+    }
+
+    private Path pathOf(String hash) {
+        return root.resolve(hash.substring(0, 2)).resolve(hash.substring(2, 4)).resolve(hash);
+    }
+
+    // Keeps the sweeper away from an existing blob that is about to be referenced again
+    private boolean touch(Path path) throws IOException {
+        try {
+            Files.setLastModifiedTime(path, FileTime.from(Instant.now()));
+            return true;
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+
+    private void deleteQuietly(Path path) {
+        if(path != null) {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private class FileSystemStagedBlob implements StagedBlob {
+
+        private final Path temp;
+
+        private final String hash;
+
+        private final long length;
+
+        private boolean committed;
+
+        private FileSystemStagedBlob(Path temp, String hash, long length) {
+            this.temp = temp;
+            this.hash = hash;
+            this.length = length;
+        }
+
+        @Override
+        public String hash() {
+            return hash;
+        }
+
+        @Override
+        public long length() {
+            return length;
+        }
+
+        @Override
+        public StoredBlob commit() {
+            Path target = pathOf(hash);
+            try {
+                if(touch(target)) {
+                    Files.delete(temp);
+                } else {
+                    Files.createDirectories(target.getParent());
+                    Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+                }
+            } catch (FileAlreadyExistsException e) {
+                deleteQuietly(temp);
+            } catch (IOException ioe) {
+                throw new IllegalStateException("I/O error occurred, when the file was stored.", ioe);
+            }
+            committed = true;
+            return new StoredBlob(hash, length);
+        }
+
+        @Override
+        public void close() {
+            if(!committed) {
+                deleteQuietly(temp);
+            }
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package socialnetwork.storage;
+
+public interface StagedBlob extends AutoCloseable {
+
+    String hash();
+
+    long length();
+
+    StoredBlob commit();
+
+    /**
+     * Discards the staged content, unless it has already been committed.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,4 @@
+package socialnetwork.storage;
+
+public record StoredBlob(String hash, long length) {
+}
@@ -0,0 +1,82 @@
+package socialnetwork.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+@Component
+@Slf4j
+public class V0_10__MoveContentsToBlobStore extends BaseJavaMigration {
+
+    private final BlobStore blobStore;
+
+    private final int batchSize;
+
+    public V0_10__MoveContentsToBlobStore(BlobStore blobStore, @Value("${socialnetwork.blob-store.migration-batch-size:100}") int batchSize) {
+        this.blobStore = blobStore;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public boolean canExecuteInTransaction() {
+        return false;
+    }
+
+    @Override
+    public void migrate(Context context) throws Exception {
+        Connection connection = context.getConnection();
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try {
+            int moved;
+            long total = 0;
+            do {
+                moved = moveBatch(connection);
+                connection.commit();
+                total += moved;
+            } while (moved == batchSize);
+            log.info("{} post contents have been moved to the blob store.", total);
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    // The rows are streamed one by one, so only a single content is held in memory at a time
+    private int moveBatch(Connection connection) throws SQLException {
+        try (PreparedStatement select = connection.prepareStatement("SELECT post_id, content FROM files WHERE content_hash IS NULL ORDER BY post_id LIMIT ?");
+             PreparedStatement update = connection.prepareStatement("UPDATE files SET content_hash = ?, content_length = ? WHERE post_id = ?")) {
+            select.setInt(1, batchSize);
+            select.setFetchSize(1);
+            int count = 0;
+            try (ResultSet rs = select.executeQuery()) {
+                while (rs.next()) {
+                    long postId = rs.getLong("post_id");
+                    StoredBlob blob;
+                    try (InputStream content = rs.getBinaryStream("content")) {
+                        blob = blobStore.store(content);
+                    } catch (IOException ioe) {
+                        throw new IllegalStateException("I/O error occurred, when the content of post " + postId + " was moved.", ioe);
+                    }
+                    update.setString(1, blob.hash());
+                    update.setLong(2, blob.length());
+                    update.setLong(3, postId);
+                    update.addBatch();
+                    count++;
+                }
+            }
+            if(count > 0) {
+                update.executeBatch();
+            }
+            return count;
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package socialnetwork.thumbnails;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+import socialnetwork.models.Post;
+import socialnetwork.models.PostFile;
+import socialnetwork.repositories.PostRepository;
+import socialnetwork.services.PostUploadedEvent;
+import socialnetwork.storage.BlobStore;
+import socialnetwork.storage.StoredBlob;
+
+import javax.imageio.IIOException;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Component
+@Slf4j
+public class ThumbnailGenerator implements MeterBinder, DisposableBean {
+
+    private final PostRepository postRepository;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final BlobStore blobStore;
+
+    private final ThumbnailProperties properties;
+
+    private final long maxPixels;
+
+    private final ThreadPoolExecutor executor;
+
+    private final AtomicLong generated = new AtomicLong();
+
+    private final AtomicLong generationNanos = new AtomicLong();
+
+    private final AtomicLong rejected = new AtomicLong();
+
+    private final AtomicLong failed = new AtomicLong();
+
+    public ThumbnailGenerator(PostRepository postRepository, TransactionTemplate transactionTemplate, BlobStore blobStore, ThumbnailProperties properties,
+                              @Value("${socialnetwork.upload.max-pixels}") long maxPixels) {
+        this.postRepository = postRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.blobStore = blobStore;
+        this.properties = properties;
+        this.maxPixels = maxPixels;
+        this.executor = new ThreadPoolExecutor(properties.getThreads(), properties.getThreads(), 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(properties.getQueueCapacity()), new CustomizableThreadFactory("thumbnails-"));
+    }
+
+    @TransactionalEventListener
+    public void onPostUploaded(PostUploadedEvent event) {
+        submit(event.postId());
+    }
+
+    public void submit(long postId) {
+        try {
+            executor.execute(() -> generate(postId));
+        } catch (RejectedExecutionException ree) {
+            rejected.incrementAndGet();
+            log.warn("Thumbnail generation of post {} was skipped, because the queue is full.", postId);
+        }
+    }
+
+    public int generate(long postId) {
+        long start = System.nanoTime();
+        try {
+            // The post has just been uploaded, a read-only transaction could look for it on a replica without it
+            Optional<Post> post = transactionTemplate.execute(status -> postRepository.findById(postId));
+            if(post.isEmpty()) {
+                return 0;
+            }
+            PostFile file = post.get().getPostFile();
+            String format = formatOf(file.getMimeType());
+            DecodedImage original = null;
+            if(format != null) {
+                try(InputStream stream = blobStore.load(file.getContentHash()).getInputStream()) {
+                    original = decode(stream, format);
+                }
+            }
+            if(original == null) {
+                log.warn("Thumbnails of post {} can not be generated from the content type {}.", postId, file.getMimeType());
+                failed.incrementAndGet();
+                return 0;
+            }
+            if(file.getWidth() == null) {
+                postRepository.saveDimensions(postId, original.width(), original.height());
+            }
+            int created = 0;
+            for(Map.Entry<String, Integer> size : properties.getSizes().entrySet()) {
+                if(postRepository.findThumbnailHash(postId, size.getKey()).isEmpty()) {
+                    created += saveThumbnail(postId, size.getKey(), size.getValue(), file, original, format);
+                }
+            }
+            return created;
+        } catch (IOException | RuntimeException e) {
+            log.warn("Thumbnails of post {} could not be generated.", postId, e);
+            failed.incrementAndGet();
+            return 0;
+        } finally {
+            generated.incrementAndGet();
+            generationNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("thumbnail.queue.size", executor, e -> e.getQueue().size())
+                .description("The number of posts waiting for thumbnail generation")
+                .register(registry);
+        Gauge.builder("thumbnail.active", executor, ThreadPoolExecutor::getActiveCount)
+                .description("The number of posts whose thumbnails are being generated")
+                .register(registry);
+        FunctionTimer.builder("thumbnail.generation", this, t -> t.generated.get(), t -> t.generationNanos.get(), TimeUnit.NANOSECONDS)
+                .description("The time spent generating all thumbnails of a post")
+                .register(registry);
+        FunctionCounter.builder("thumbnail.rejected", rejected, AtomicLong::get)
+                .description("The number of posts skipped, because the queue was full")
+                .register(registry);
+        FunctionCounter.builder("thumbnail.failed", failed, AtomicLong::get)
+                .description("The number of posts whose thumbnails could not be generated")
+                .register(registry);
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    // The dimensions are checked before decoding, because a small file can hold a huge bitmap. The image is decoded with
+    // source subsampling, keeping at least twice the pixels of the largest thumbnail for the bicubic scaling.
+    private DecodedImage decode(InputStream stream, String format) throws IOException {
+        try(ImageInputStream input = ImageIO.createImageInputStream(stream)) {
+            Iterator<ImageReader> readers = input == null ? Collections.emptyIterator() : ImageIO.getImageReadersByFormatName(format);
+            if(!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if((long) width * height > maxPixels) {
+                    throw new IIOException(String.format("The image of %dx%d pixels is too large.", width, height));
+                }
+                int largestBound = properties.getSizes().values().stream().mapToInt(Integer::intValue).max().orElse(Integer.MAX_VALUE);
+                int subsampling = Math.max(1, Math.max(width, height) / (2 * largestBound));
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                return new DecodedImage(reader.read(0, param), width, height);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private int saveThumbnail(long postId, String size, int bound, PostFile file, DecodedImage original, String format) throws IOException {
+        int width = original.width();
+        int height = original.height();
+        if(Math.max(width, height) <= bound) {
+            return postRepository.saveThumbnail(postId, size, file.getContentHash(), file.getContentLength(), width, height);
+        }
+        double scale = (double) bound / Math.max(width, height);
+        BufferedImage thumbnail = scale(original.image(), Math.max(1, (int) Math.round(width * scale)), Math.max(1, (int) Math.round(height * scale)), format);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ImageIO.write(thumbnail, format, bytes);
+        StoredBlob blob = blobStore.store(new ByteArrayInputStream(bytes.toByteArray()));
+        return postRepository.saveThumbnail(postId, size, blob.hash(), blob.length(), thumbnail.getWidth(), thumbnail.getHeight());
+    }
+
+    private BufferedImage scale(BufferedImage original, int width, int height, String format) {
+        int type = "png".equals(format) ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        BufferedImage scaled = new BufferedImage(width, height, type);
+        Graphics2D graphics = scaled.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(original, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return scaled;
+    }
+
+    private String formatOf(String mimeType) {
+        return switch(mimeType) {
+            case "image/jpeg" -> "jpeg";
+            case "image/png" -> "png";
+            default -> null;
+        };
+    }
+
+    private record DecodedImage(BufferedImage image, int width, int height) {
+    }
+}
@@ -0,0 +1,22 @@
+package socialnetwork.thumbnails;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@Component
+@ConfigurationProperties(prefix = "socialnetwork.thumbnails")
+@Getter
+@Setter
+public class ThumbnailProperties {
+
+    private Map<String, Integer> sizes = new LinkedHashMap<>();
+
+    private int threads = 2;
+
+    private int queueCapacity = 100;
+}
@@ -5,9 +5,7 @@ import org.mapstruct.Mapping;
 import socialnetwork.dtos.PostDataDto;
 import socialnetwork.models.Post;
 import socialnetwork.models.User;
-import socialnetwork.dtos.RelationshipDto;
 import socialnetwork.dtos.UserDto;
-import socialnetwork.dtos.ContentDto;
 
 import java.util.List;
 import java.util.Set;
@@ -20,17 +18,14 @@ public interface DtoMapper {
 
     List<UserDto> usersToDtoList(List<User> users);
 
-    @Mapping(source = "postFile.mimeType", target = "mimeType")
-    @Mapping(source = "postFile.content", target = "content")
-    @Mapping(source = "postFile.filename", target = "filename")
-    ContentDto postToContent(Post post);
+    @Mapping(target = "friends", source = "friendIds")
+    UserDto userToDtoWithFriendIds(User user, Set<Long> friendIds);
 
     List<PostDataDto> postsToDtoList(List<Post> posts);
 
-    @Mapping(source = "id", target = "userId")
-    RelationshipDto userToRelationship(User user);
-
     @Mapping(source = "postFile.filename", target = "filename")
+    @Mapping(source = "postFile.width", target = "width")
+    @Mapping(source = "postFile.height", target = "height")
     @Mapping(source = "user.id", target = "userId")
     PostDataDto postToDto(Post post);
 
@@ -0,0 +1,188 @@
+package socialnetwork.utils;
+
+import socialnetwork.exceptions.InvalidImageContentException;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+public class ImageSniffingInputStream extends FilterInputStream {
+
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n', 0, 0, 0, 13, 'I', 'H', 'D', 'R'};
+
+    private enum State { SIGNATURE, PNG_HEADER, JPEG_MARKER_PREFIX, JPEG_MARKER, JPEG_LENGTH, JPEG_SKIP, JPEG_FRAME_HEADER, DONE }
+
+    private final String format;
+
+    private State state = State.SIGNATURE;
+
+    private long position;
+
+    private long field;
+
+    private int fieldLength;
+
+    private long remaining;
+
+    private boolean frame;
+
+    private int width;
+
+    private int height;
+
+    public ImageSniffingInputStream(InputStream in, String mimeType) {
+        super(in);
+        this.format = switch(mimeType) {
+            case "image/jpeg" -> "JPEG";
+            case "image/png" -> "PNG";
+            default -> throw new IllegalArgumentException("Unsupported image type: " + mimeType);
+        };
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if(b < 0) {
+            checkComplete();
+        } else if(state != State.DONE) {
+            inspect(b);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        int count = super.read(bytes, offset, length);
+        if(count < 0) {
+            checkComplete();
+        }
+        for(int i = offset; i < offset + count && state != State.DONE; i++) {
+            if(state == State.JPEG_SKIP && remaining > 1) {
+                int skipped = (int) Math.min(remaining - 1, offset + count - i);
+                remaining -= skipped;
+                position += skipped;
+                i += skipped - 1;
+                continue;
+            }
+            inspect(bytes[i] & 0xff);
+        }
+        return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        byte[] buffer = new byte[(int) Math.min(n, 8192)];
+        int count = read(buffer, 0, buffer.length);
+        return Math.max(count, 0);
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    public int getWidth() {
+        checkComplete();
+        return width;
+    }
+
+    public int getHeight() {
+        checkComplete();
+        return height;
+    }
+
+    private void inspect(int b) {
+        switch(state) {
+            case SIGNATURE -> inspectSignature(b);
+            case PNG_HEADER -> {
+                readField(b);
+                if(fieldLength == 8) {
+                    width = (int) (field >>> 32);
+                    height = (int) field;
+                    finish();
+                }
+            }
+            case JPEG_MARKER_PREFIX -> expect(b == 0xff, State.JPEG_MARKER);
+            case JPEG_MARKER -> inspectMarker(b);
+            case JPEG_LENGTH -> {
+                readField(b);
+                if(fieldLength == 2) {
+                    expect(field >= 2, frame ? State.JPEG_FRAME_HEADER : State.JPEG_SKIP);
+                    remaining = field - 2;
+                    startField();
+                    if(state == State.JPEG_SKIP && remaining == 0) {
+                        state = State.JPEG_MARKER_PREFIX;
+                    }
+                }
+            }
+            case JPEG_SKIP -> {
+                if(--remaining == 0) {
+                    state = State.JPEG_MARKER_PREFIX;
+                }
+            }
+            case JPEG_FRAME_HEADER -> {
+                readField(b);
+                if(fieldLength == 5) {
+                    height = (int) (field >> 16) & 0xffff;
+                    width = (int) field & 0xffff;
+                    finish();
+                }
+            }
+            default -> {
+            }
+        }
+        position++;
+    }
+
+    private void inspectSignature(int b) {
+        boolean png = "PNG".equals(format);
+        int expected = png ? PNG_SIGNATURE[(int) position] & 0xff : (position == 0 ? 0xff : 0xd8);
+        expect(b == expected, State.SIGNATURE);
+        if(png && position == PNG_SIGNATURE.length - 1) {
+            state = State.PNG_HEADER;
+            startField();
+        } else if(!png && position == 1) {
+            state = State.JPEG_MARKER_PREFIX;
+        }
+    }
+
+    private void inspectMarker(int b) {
+        if(b == 0xff) {
+            return;
+        }
+        if(b == 0x01 || (b >= 0xd0 && b <= 0xd7)) {
+            state = State.JPEG_MARKER_PREFIX;
+            return;
+        }
+        expect(b != 0xda && b != 0xd9 && b != 0x00, State.JPEG_LENGTH);
+        frame = b >= 0xc0 && b <= 0xcf && b != 0xc4 && b != 0xc8 && b != 0xcc;
+        startField();
+    }
+
+    private void readField(int b) {
+        field = (field << 8) | b;
+        fieldLength++;
+    }
+
+    private void startField() {
+        field = 0;
+        fieldLength = 0;
+    }
+
+    private void expect(boolean condition, State next) {
+        if(!condition) {
+            throw new InvalidImageContentException(format);
+        }
+        state = next;
+    }
+
+    private void finish() {
+        expect(width > 0 && height > 0, State.DONE);
+    }
+
+    private void checkComplete() {
+        if(state != State.DONE) {
+            throw new InvalidImageContentException(format);
+        }
+    }
+}
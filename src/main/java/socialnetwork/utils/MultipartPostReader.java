@@ -0,0 +1,121 @@
+package socialnetwork.utils;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.validation.Validator;
+import org.apache.commons.fileupload2.core.FileItemInput;
+import org.apache.commons.fileupload2.core.FileItemInputIterator;
+import org.apache.commons.fileupload2.core.FileUploadByteCountLimitException;
+import org.apache.commons.fileupload2.jakarta.servlet6.JakartaServletFileUpload;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.validation.BeanPropertyBindingResult;
+import org.springframework.validation.BindException;
+import org.springframework.validation.beanvalidation.SpringValidatorAdapter;
+import socialnetwork.dtos.CreatePostCommand;
+import socialnetwork.dtos.UploadedFile;
+import socialnetwork.exceptions.ContentValidator;
+import socialnetwork.storage.BlobStore;
+import socialnetwork.storage.StagedBlob;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Function;
+
+@Component
+public class MultipartPostReader {
+
+    private static final int MAX_FIELD_LENGTH = 16 * 1024;
+
+    private final SpringValidatorAdapter validator;
+
+    private final BlobStore blobStore;
+
+    private final DataSize maxFileSize;
+
+    private final DataSize maxRequestSize;
+
+    public MultipartPostReader(Validator validator, BlobStore blobStore,
+                               @Value("${socialnetwork.upload.max-file-size}") DataSize maxFileSize,
+                               @Value("${socialnetwork.upload.max-request-size}") DataSize maxRequestSize) {
+        this.validator = new SpringValidatorAdapter(validator);
+        this.blobStore = blobStore;
+        this.maxFileSize = maxFileSize;
+        this.maxRequestSize = maxRequestSize;
+    }
+
+    public <T> T read(HttpServletRequest request, Function<CreatePostCommand, T> handler) throws BindException {
+        CreatePostCommand command = new CreatePostCommand();
+        try {
+            parse(request, command);
+            validate(command);
+            return handler.apply(command);
+        } finally {
+            discardFile(command);
+        }
+    }
+
+    private void parse(HttpServletRequest request, CreatePostCommand command) {
+        JakartaServletFileUpload<?, ?> upload = new JakartaServletFileUpload<>();
+        upload.setFileSizeMax(maxFileSize.toBytes());
+        upload.setSizeMax(maxRequestSize.toBytes());
+        Charset charset = request.getCharacterEncoding() == null ? StandardCharsets.UTF_8 : Charset.forName(request.getCharacterEncoding());
+        try {
+            FileItemInputIterator items = upload.getItemIterator(request);
+            while (items.hasNext()) {
+                FileItemInput item = items.next();
+                try (InputStream stream = item.getInputStream()) {
+                    if(item.isFormField()) {
+                        readField(item.getFieldName(), stream, charset, command);
+                    } else if("file".equals(item.getFieldName())) {
+                        discardFile(command);
+                        command.setFile(readFile(item, stream));
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("I/O error occurred, when the request was reading.", e);
+        }
+    }
+
+    private void readField(String name, InputStream stream, Charset charset, CreatePostCommand command) throws IOException {
+        byte[] bytes = stream.readNBytes(MAX_FIELD_LENGTH + 1);
+        if(bytes.length > MAX_FIELD_LENGTH) {
+            throw new FileUploadByteCountLimitException(
+                    String.format("The field %s exceeds its maximum permitted size of %s bytes.", name, MAX_FIELD_LENGTH),
+                    bytes.length, MAX_FIELD_LENGTH, null, name);
+        }
+        String value = new String(bytes, charset);
+        switch (name) {
+            case "title" -> command.setTitle(value);
+            case "description" -> command.setDescription(value);
+            default -> {
+            }
+        }
+    }
+
+    private UploadedFile readFile(FileItemInput item, InputStream stream) {
+        if(!ContentValidator.isAllowed(item.getName(), item.getContentType())) {
+            return new UploadedFile(item.getName(), item.getContentType(), null, null, null);
+        }
+        ImageSniffingInputStream image = new ImageSniffingInputStream(stream, item.getContentType());
+        StagedBlob blob = blobStore.stage(image);
+        return new UploadedFile(item.getName(), item.getContentType(), blob, image.getWidth(), image.getHeight());
+    }
+
+    private void validate(CreatePostCommand command) throws BindException {
+        BeanPropertyBindingResult errors = new BeanPropertyBindingResult(command, "command");
+        validator.validate(command, errors);
+        if(errors.hasErrors()) {
+            throw new BindException(errors);
+        }
+    }
+
+    private void discardFile(CreatePostCommand command) {
+        if(command.getFile() != null && command.getFile().getContent() != null) {
+            command.getFile().getContent().close();
+        }
+    }
+}
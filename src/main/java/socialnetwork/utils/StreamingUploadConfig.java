@@ -0,0 +1,106 @@
+package socialnetwork.utils;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import org.apache.commons.fileupload2.jakarta.servlet6.JakartaServletFileUpload;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpMethod;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.multipart.MultipartResolver;
+import org.springframework.web.multipart.support.StandardServletMultipartResolver;
+import org.springframework.web.util.UriComponentsBuilder;
+import org.springframework.web.util.WebUtils;
+
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Multipart requests are resolved by Spring as usual, except the post upload, which MultipartPostReader reads as a
+// stream. Its request only exposes the query string as parameters, otherwise the first getParameter call would make
+// the servlet container parse and buffer every part before the controller is reached.
+// The other multipart requests keep the spring.servlet.multipart limits, which are set to the same upload limits.
+@Configuration
+public class StreamingUploadConfig {
+
+    private static final String UPLOAD_PATH = "/api/posts";
+
+    @Bean
+    public MultipartResolver multipartResolver() {
+        return new StandardServletMultipartResolver() {
+            @Override
+            public boolean isMultipart(HttpServletRequest request) {
+                return WebUtils.getNativeRequest(request, StreamedUploadRequest.class) == null && super.isMultipart(request);
+            }
+        };
+    }
+
+    @Bean
+    public FilterRegistrationBean<OncePerRequestFilter> streamingUploadFilter() {
+        FilterRegistrationBean<OncePerRequestFilter> registration = new FilterRegistrationBean<>(new OncePerRequestFilter() {
+            @Override
+            protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain) throws ServletException, IOException {
+                if(HttpMethod.POST.matches(request.getMethod()) && JakartaServletFileUpload.isMultipartContent(request)) {
+                    chain.doFilter(new StreamedUploadRequest(request), response);
+                } else {
+                    chain.doFilter(request, response);
+                }
+            }
+        });
+        registration.addUrlPatterns(UPLOAD_PATH);
+        return registration;
+    }
+
+    private static class StreamedUploadRequest extends HttpServletRequestWrapper {
+
+        private final Map<String, String[]> parameters;
+
+        StreamedUploadRequest(HttpServletRequest request) {
+            super(request);
+            this.parameters = parseQuery(request.getQueryString());
+        }
+
+        @Override
+        public String getParameter(String name) {
+            String[] values = parameters.get(name);
+            return values == null ? null : values[0];
+        }
+
+        @Override
+        public Map<String, String[]> getParameterMap() {
+            return parameters;
+        }
+
+        @Override
+        public Enumeration<String> getParameterNames() {
+            return Collections.enumeration(parameters.keySet());
+        }
+
+        @Override
+        public String[] getParameterValues(String name) {
+            return parameters.get(name);
+        }
+
+        private static Map<String, String[]> parseQuery(String query) {
+            MultiValueMap<String, String> params = query == null ? new LinkedMultiValueMap<>() : UriComponentsBuilder.newInstance().query(query).build().getQueryParams();
+            Map<String, String[]> parameters = new LinkedHashMap<>();
+            params.forEach((name, values) -> parameters.put(decode(name),
+                    values.stream().map(value -> value == null ? "" : decode(value)).toArray(String[]::new)));
+            return Collections.unmodifiableMap(parameters);
+        }
+
+        private static String decode(String value) {
+            return URLDecoder.decode(value, StandardCharsets.UTF_8);
+        }
+    }
+}
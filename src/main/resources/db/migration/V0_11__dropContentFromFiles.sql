@@ -0,0 +1,5 @@
+ALTER TABLE files DROP COLUMN content;
+
+ALTER TABLE files MODIFY content_hash CHAR(64) NOT NULL;
+
+ALTER TABLE files MODIFY content_length BIGINT NOT NULL;
@@ -0,0 +1,10 @@
+CREATE TABLE thumbnails (
+    post_id BIGINT NOT NULL,
+    variant VARCHAR(20) NOT NULL,
+    content_hash CHAR(64) NOT NULL,
+    content_length BIGINT NOT NULL,
+    width INT NOT NULL,
+    height INT NOT NULL,
+    PRIMARY KEY (post_id, variant),
+    FOREIGN KEY (post_id) REFERENCES posts (id) ON DELETE CASCADE
+);
@@ -0,0 +1,3 @@
+ALTER TABLE files ADD COLUMN width INT;
+
+ALTER TABLE files ADD COLUMN height INT;
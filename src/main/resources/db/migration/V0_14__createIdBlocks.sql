@@ -0,0 +1,8 @@
+CREATE TABLE id_blocks (
+    name VARCHAR(31) NOT NULL,
+    next_id BIGINT NOT NULL,
+    PRIMARY KEY (name)
+);
+
+INSERT INTO id_blocks (name, next_id) SELECT 'users', COALESCE(MAX(id), 0) + 1 FROM users;
+INSERT INTO id_blocks (name, next_id) SELECT 'posts', COALESCE(MAX(id), 0) + 1 FROM posts;
@@ -0,0 +1,7 @@
+ALTER TABLE users ADD COLUMN friend_count INT NOT NULL DEFAULT 0;
+
+ALTER TABLE users ADD COLUMN post_count INT NOT NULL DEFAULT 0;
+
+UPDATE users u SET
+    friend_count = (SELECT COUNT(*) FROM users_to_users uu WHERE uu.user_id = u.id),
+    post_count = (SELECT COUNT(*) FROM posts p WHERE p.user_id = u.id);
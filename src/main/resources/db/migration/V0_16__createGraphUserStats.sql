@@ -0,0 +1,7 @@
+CREATE TABLE graph_user_stats (
+    user_id BIGINT NOT NULL,
+    degree INT NOT NULL,
+    component_id BIGINT NOT NULL,
+    triangles BIGINT NOT NULL,
+    PRIMARY KEY (user_id)
+);
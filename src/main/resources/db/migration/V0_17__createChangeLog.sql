@@ -0,0 +1,11 @@
+CREATE TABLE change_log (
+    id BIGINT NOT NULL AUTO_INCREMENT,
+    entity VARCHAR(15) NOT NULL,
+    entity_id BIGINT NOT NULL,
+    other_id BIGINT,
+    origin CHAR(36) NOT NULL,
+    changed_on TIMESTAMP NOT NULL,
+    PRIMARY KEY (id)
+);
+
+CREATE INDEX idx_change_log_changed_on ON change_log (changed_on);
@@ -0,0 +1,7 @@
+CREATE INDEX idx_posts_user_posted_on ON posts (user_id, posted_on);
+
+CREATE INDEX idx_users_to_users_friend_id ON users_to_users (friend_id);
+
+CREATE INDEX idx_personal_data_city ON personal_data (city);
+
+CREATE INDEX idx_users_registered_on ON users (registered_on);
@@ -0,0 +1,3 @@
+CREATE INDEX idx_files_content_hash ON files (content_hash);
+
+CREATE INDEX idx_thumbnails_content_hash ON thumbnails (content_hash);
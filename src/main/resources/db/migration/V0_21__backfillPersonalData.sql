@@ -0,0 +1,3 @@
+INSERT INTO personal_data (user_id)
+SELECT u.id FROM users u
+WHERE NOT EXISTS (SELECT 1 FROM personal_data pd WHERE pd.user_id = u.id);
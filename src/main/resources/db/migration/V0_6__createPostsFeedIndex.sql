@@ -0,0 +1 @@
+CREATE INDEX idx_posts_posted_on_id ON posts (posted_on, id);
@@ -0,0 +1,13 @@
+CREATE TABLE timelines (
+    owner_id BIGINT NOT NULL,
+    post_id BIGINT NOT NULL,
+    posted_on TIMESTAMP NOT NULL,
+    PRIMARY KEY (owner_id, post_id),
+    FOREIGN KEY (owner_id) REFERENCES users (id) ON DELETE CASCADE,
+    FOREIGN KEY (post_id) REFERENCES posts (id) ON DELETE CASCADE
+);
+
+CREATE INDEX idx_timelines_owner_posted_on ON timelines (owner_id, posted_on, post_id);
+
+INSERT INTO timelines (owner_id, post_id, posted_on)
+SELECT uu.user_id, p.id, p.posted_on FROM users_to_users uu JOIN posts p ON p.user_id = uu.friend_id;
@@ -0,0 +1,3 @@
+ALTER TABLE files ADD COLUMN content_hash CHAR(64);
+
+ALTER TABLE files ADD COLUMN content_length BIGINT;
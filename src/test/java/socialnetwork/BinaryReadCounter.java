@@ -0,0 +1,31 @@
+package socialnetwork;
+
+import org.springframework.boot.test.context.TestComponent;
+
+import java.lang.reflect.Method;
+import java.sql.Blob;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicLong;
+
+@TestComponent
+public class BinaryReadCounter extends JdbcProxyPostProcessor {
+
+    private final AtomicLong bytesRead = new AtomicLong();
+
+    public long getBytesRead() {
+        return bytesRead.get();
+    }
+
+    public void reset() {
+        bytesRead.set(0);
+    }
+
+    @Override
+    protected void afterCall(Object target, Method method, Object[] args, Object result) throws SQLException {
+        if(result instanceof byte[] bytes) {
+            bytesRead.addAndGet(bytes.length);
+        } else if(result instanceof Blob blob) {
+            bytesRead.addAndGet(blob.length());
+        }
+    }
+}
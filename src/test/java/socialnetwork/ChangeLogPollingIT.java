@@ -0,0 +1,202 @@
+package socialnetwork;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.MultipartBodyBuilder;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.reactive.function.BodyInserters;
+import socialnetwork.dtos.CreateUserCommand;
+import socialnetwork.dtos.ModifyPersonalDataCommand;
+import socialnetwork.dtos.PostDataDto;
+import socialnetwork.dtos.UserDto;
+import socialnetwork.graph.FriendshipGraph;
+
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+// The test context and a second application started on the same database play two nodes of a cluster
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@Sql(statements = {
+        "DELETE FROM files",
+        "DELETE FROM posts",
+        "DELETE FROM personal_data",
+        "DELETE FROM users_to_users",
+        "DELETE FROM change_log",
+        "DELETE FROM users"
+        }, executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+class ChangeLogPollingIT {
+
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    private static ConfigurableApplicationContext otherNode;
+
+    private static WebTestClient otherClient;
+
+    @Autowired
+    private WebTestClient client;
+
+    @BeforeAll
+    static void startOtherNode() {
+        otherNode = new SpringApplicationBuilder(SocialnetworkApplication.class)
+                .properties("server.port=0")
+                .run();
+        otherClient = WebTestClient.bindToServer()
+                .baseUrl("http://localhost:" + otherNode.getEnvironment().getProperty("local.server.port"))
+                .build();
+    }
+
+    @AfterAll
+    static void stopOtherNode() {
+        otherNode.close();
+    }
+
+    @Test
+    public void testCachedProfileIsRefreshedOnOtherNode() {
+        long id = register("lifelover");
+        assertEquals("lifelover", getOnOtherNode(id).getUsername());
+
+        client.put()
+                .uri("/api/users/{id}/personal", id)
+                .bodyValue(new ModifyPersonalDataCommand("Gipsz Jakab", null, null))
+                .exchange()
+                .expectStatus().isOk();
+
+        awaitOnOtherNode(() -> "Gipsz Jakab".equals(getOnOtherNode(id).getPersonalData().getRealName()));
+
+        client.delete()
+                .uri("/api/users/{id}", id)
+                .exchange()
+                .expectStatus().isNoContent();
+
+        awaitOnOtherNode(() -> otherClient.get()
+                .uri("/api/users/{id}", id)
+                .exchange()
+                .returnResult(UserDto.class)
+                .getStatus() == HttpStatus.NOT_FOUND);
+    }
+
+    @Test
+    public void testFriendshipIsAppliedOnOtherNode() {
+        long id1 = register("lifelover");
+        long id2 = register("muddyboots");
+        FriendshipGraph otherGraph = otherNode.getBean(FriendshipGraph.class);
+
+        client.put()
+                .uri("/api/users/{userId}/{friendId}", id1, id2)
+                .exchange()
+                .expectStatus().isCreated();
+
+        awaitOnOtherNode(() -> otherGraph.areFriends(id1, id2) && otherGraph.areFriends(id2, id1));
+        assertTrue(getOnOtherNode(id1).getFriends().contains(id2));
+
+        client.delete()
+                .uri("/api/users/{userId}/{friendId}", id1, id2)
+                .exchange()
+                .expectStatus().isNoContent();
+
+        awaitOnOtherNode(() -> !otherGraph.areFriends(id1, id2));
+        assertFalse(getOnOtherNode(id2).getFriends().contains(id1));
+    }
+
+    @Test
+    public void testDeletedPostIsAppliedOnOtherNode() {
+        long userId = register("lifelover");
+        MultipartBodyBuilder builder = new MultipartBodyBuilder();
+        builder.part("title", "Let,s rock!");
+        builder.part("description", "This is the message for today");
+        builder.part("file", new ClassPathResource("image.jpg"));
+        long postId = client.post()
+                .uri("/api/posts?userId={userId}", userId)
+                .contentType(MediaType.MULTIPART_FORM_DATA)
+                .body(BodyInserters.fromMultipartData(builder.build()))
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBody(PostDataDto.class)
+                .returnResult()
+                .getResponseBody()
+                .getId();
+
+        awaitOnOtherNode(() -> getOnOtherNode(userId).getPostCount() == 1);
+        otherClient.get().uri("/api/posts/{id}", postId).exchange().expectStatus().isOk();
+        otherClient.get().uri("/api/posts/{id}/content", postId).exchange().expectStatus().isOk();
+
+        client.delete()
+                .uri("/api/posts/{id}", postId)
+                .exchange()
+                .expectStatus().isOk();
+
+        // The post count alone could be reloaded from the database before the post is evicted from the cache
+        awaitOnOtherNode(() -> otherClient.get().uri("/api/posts/{id}", postId).exchange()
+                .returnResult(Void.class).getStatus().equals(HttpStatus.NOT_FOUND));
+        otherClient.get().uri("/api/posts/{id}/content", postId).exchange().expectStatus().isNotFound();
+        awaitOnOtherNode(() -> getOnOtherNode(userId).getPostCount() == 0);
+    }
+
+    @Test
+    public void testNewUserIsSearchableOnOtherNode() {
+        long id = register("springboots");
+
+        awaitOnOtherNode(() -> {
+            List<UserDto> found = otherClient.get()
+                    .uri("/api/users?username=ngboo")
+                    .exchange()
+                    .expectStatus().isOk()
+                    .expectBody(new ParameterizedTypeReference<List<UserDto>>() {})
+                    .returnResult()
+                    .getResponseBody();
+            return found.size() == 1 && found.get(0).getId() == id;
+        });
+    }
+
+    private long register(String username) {
+        return client.post()
+                .uri("/api/users")
+                .bodyValue(new CreateUserCommand(username, username + "@gmail.com", "12345678"))
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBody(UserDto.class)
+                .returnResult()
+                .getResponseBody()
+                .getId();
+    }
+
+    private UserDto getOnOtherNode(long id) {
+        return otherClient.get()
+                .uri("/api/users/{id}", id)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(UserDto.class)
+                .returnResult()
+                .getResponseBody();
+    }
+
+    private static void awaitOnOtherNode(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while(!condition.getAsBoolean()) {
+            if(System.currentTimeMillis() > deadline) {
+                fail("The change has not reached the other node in " + TIMEOUT_MILLIS + " ms.");
+            }
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package socialnetwork;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.core.InfrastructureProxy;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+// Wraps the DataSource beans in proxies that follow the connections, statements and result sets they hand out, so a
+// test can watch every JDBC call through the hooks. The sql passed to the hooks is the statement a PreparedStatement
+// was prepared with, null for every other object.
+public abstract class JdbcProxyPostProcessor implements BeanPostProcessor {
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if(bean instanceof DataSource dataSource) {
+            return wrap(DataSource.class, dataSource, null);
+        }
+        return bean;
+    }
+
+    protected void beforeCall(Object target, Method method, Object[] args, String sql) throws SQLException {
+    }
+
+    protected void afterCall(Object target, Method method, Object[] args, Object result) throws SQLException {
+    }
+
+    private Object wrap(Class<?> type, Object target, String sql) {
+        InvocationHandler handler = (proxy, method, args) -> {
+            if(method.getName().equals("getWrappedObject") && method.getDeclaringClass() == InfrastructureProxy.class) {
+                return target;
+            }
+            beforeCall(target, method, args, sql);
+            Object result;
+            try {
+                result = method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            afterCall(target, method, args, result);
+            if(result instanceof Connection connection) {
+                return wrap(Connection.class, connection, null);
+            } else if(result instanceof Statement statement && method.getReturnType().isInterface()) {
+                String prepared = method.getName().startsWith("prepare") && args[0] instanceof String text ? text : null;
+                return wrap(method.getReturnType(), statement, prepared);
+            } else if(result instanceof ResultSet resultSet) {
+                return wrap(ResultSet.class, resultSet, null);
+            }
+            return result;
+        };
+        Class<?>[] interfaces = type == DataSource.class ? new Class<?>[]{type, InfrastructureProxy.class} : new Class<?>[]{type};
+        return Proxy.newProxyInstance(getClass().getClassLoader(), interfaces, handler);
+    }
+}
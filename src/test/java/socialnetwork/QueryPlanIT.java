@@ -0,0 +1,378 @@
+package socialnetwork;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+import socialnetwork.cache.EntityCacheEvictor;
+import socialnetwork.repositories.PostRepository;
+import socialnetwork.repositories.UserRepository;
+
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.fail;
+
+// Runs the queries of the repositories against a few thousand rows and explains every statement they send. A query
+// reading a whole table, or a whole index without a condition, fails the test, so a changed query or a dropped index
+// shows up here before it shows up in production. The writes are rolled back, the data is seeded once for the class.
+@SpringBootTest(properties = "socialnetwork.change-log.poll-interval=1h")
+@Import(StatementRecorder.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class QueryPlanIT {
+
+    private static final int USERS = 2000;
+
+    private static final int FRIENDS_PER_SIDE = 5;
+
+    private static final int POSTS_PER_USER = 2;
+
+    private static final int CITIES = 50;
+
+    private static final String HASH = "a".repeat(64);
+
+    private static final LocalDateTime REGISTERED_FROM = LocalDateTime.of(2023, 1, 1, 0, 0);
+
+    private static final LocalDateTime POSTED_FROM = LocalDateTime.of(2023, 6, 1, 0, 0);
+
+    // An H2 plan names the index of every table after it, followed by the condition used to search it
+    private static final Pattern H2_INDEX = Pattern.compile("/\\* (\\w+)\\.([\\w.]+?)(?::(.*?))? \\*/(\\s*/\\* direct lookup \\*/)?", Pattern.DOTALL);
+
+    private static final Pattern H2_CONDITIONS = Pattern.compile("\\s+AND\\s+");
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PostRepository postRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private StatementRecorder recorder;
+
+    @Autowired
+    private EntityCacheEvictor cacheEvictor;
+
+    @BeforeAll
+    void seed() {
+        List<Object[]> users = new ArrayList<>();
+        List<Object[]> personalData = new ArrayList<>();
+        List<Object[]> friendships = new ArrayList<>();
+        List<Object[]> posts = new ArrayList<>();
+        List<Object[]> files = new ArrayList<>();
+        List<Object[]> thumbnails = new ArrayList<>();
+        for(long id = 1; id <= USERS; id++) {
+            users.add(new Object[]{id, "user" + id, "user" + id + "@example.com", HASH, REGISTERED_FROM.plusHours(id), 2 * FRIENDS_PER_SIDE, POSTS_PER_USER});
+            personalData.add(new Object[]{id, "Real Name " + id, "City " + id % CITIES});
+            for(int i = 1; i <= FRIENDS_PER_SIDE; i++) {
+                friendships.add(new Object[]{id, Math.floorMod(id - 1 + i, USERS) + 1});
+                friendships.add(new Object[]{id, Math.floorMod(id - 1 - i, USERS) + 1});
+            }
+            for(int i = 0; i < POSTS_PER_USER; i++) {
+                long postId = (id - 1) * POSTS_PER_USER + i + 1;
+                posts.add(new Object[]{postId, id, "Post " + postId, POSTED_FROM.plusMinutes(postId)});
+                files.add(new Object[]{postId, "image" + postId + ".jpg", HASH});
+                if(postId % 2 == 0) {
+                    thumbnails.add(new Object[]{postId, "small", HASH});
+                }
+            }
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO users (id, username, email, password, registered_on, friend_count, post_count) VALUES (?, ?, ?, ?, ?, ?, ?)", users);
+        jdbcTemplate.batchUpdate("INSERT INTO personal_data (user_id, real_name, city) VALUES (?, ?, ?)", personalData);
+        jdbcTemplate.batchUpdate("INSERT INTO users_to_users (user_id, friend_id) VALUES (?, ?)", friendships);
+        jdbcTemplate.batchUpdate("INSERT INTO posts (id, user_id, title, posted_on) VALUES (?, ?, ?, ?)", posts);
+        jdbcTemplate.batchUpdate("INSERT INTO files (post_id, filename, mime_type, content_hash, content_length) VALUES (?, ?, 'image/jpeg', ?, 1024)", files);
+        jdbcTemplate.batchUpdate("INSERT INTO thumbnails (post_id, variant, content_hash, content_length, width, height) VALUES (?, ?, ?, 512, 100, 100)", thumbnails);
+        jdbcTemplate.update("INSERT INTO timelines (owner_id, post_id, posted_on) SELECT uu.user_id, p.id, p.posted_on FROM users_to_users uu JOIN posts p ON p.user_id = uu.friend_id");
+        // The planners choose by the statistics, which are not kept up to date by every database
+        if(isH2()) {
+            jdbcTemplate.execute("ANALYZE");
+        } else {
+            jdbcTemplate.execute("ANALYZE TABLE users, personal_data, users_to_users, posts, files, thumbnails, timelines");
+        }
+    }
+
+    @AfterAll
+    void cleanUp() {
+        jdbcTemplate.batchUpdate(
+                "DELETE FROM thumbnails",
+                "DELETE FROM timelines",
+                "DELETE FROM files",
+                "DELETE FROM posts",
+                "DELETE FROM personal_data",
+                "DELETE FROM users_to_users",
+                "DELETE FROM change_log",
+                "DELETE FROM users");
+    }
+
+    @Test
+    public void testFindUsersByParams() {
+        assertIndexed(() -> userRepository.findUsersByParams(0, null, null, null, null, null, PageRequest.of(0, 20)));
+        assertIndexed(() -> userRepository.findUsersByParams(1000, "user1", null, null, null, null, PageRequest.of(0, 20)));
+        assertIndexed(() -> userRepository.findUsersByParams(0, null, null, REGISTERED_FROM.plusHours(1500), null, null, PageRequest.of(0, 20)));
+        assertIndexed(() -> userRepository.findUsersByParams(0, null, null, null, null, "City 7", PageRequest.of(0, 20)));
+    }
+
+    @Test
+    public void testFindUsersByIdsAndParams() {
+        assertIndexed(() -> userRepository.findUsersByIdsAndParams(List.of(1L, 2L, 3L), 0, null, null, null, null, "City 2", PageRequest.of(0, 20)));
+    }
+
+    @Test
+    public void testCountUsersByParams() {
+        assertIndexed(() -> userRepository.countUsersByParams(null, null, REGISTERED_FROM.plusHours(1500), null, null));
+    }
+
+    // Every user has a personal data row, so it is inner joined and the search can start from the index of the city
+    @Test
+    public void testCountUsersByCity() {
+        assertIndexed(() -> userRepository.countUsersByParams(null, null, null, null, "City 7"));
+    }
+
+    @Test
+    public void testCountUsersByIdsAndParams() {
+        assertIndexed(() -> userRepository.countUsersByIdsAndParams(List.of(1L, 2L, 3L), null, null, null, null, null));
+    }
+
+    @Test
+    public void testFindCountersOfUsers() {
+        assertIndexed(() -> userRepository.findCountersOfUsers(List.of(1L, 2L, 3L)));
+    }
+
+    @Test
+    public void testFindFriendIdsOfUsers() {
+        assertIndexed(() -> userRepository.findFriendIdsOfUsers(List.of(1L, 2L, 3L)));
+    }
+
+    @Test
+    public void testFindUserDtosByIds() {
+        assertIndexed(() -> userRepository.findUserDtosByIds(List.of(1L, 2L, 3L)));
+    }
+
+    @Test
+    public void testFindUserWithFriendsById() {
+        assertIndexed(() -> userRepository.findUserWithFriendsById(10));
+    }
+
+    @Test
+    public void testListFriendSummaries() {
+        assertIndexed(() -> userRepository.listFriendSummaries(10, 0, PageRequest.of(0, 20)));
+    }
+
+    @Test
+    public void testFindMaxId() {
+        assertIndexed(() -> userRepository.findMaxId());
+    }
+
+    @Test
+    public void testFriendshipWrites() {
+        assertIndexed(() -> userRepository.insertFriendship(10, 500));
+        assertIndexed(() -> userRepository.deleteFriendship(10, 11));
+        assertIndexed(() -> userRepository.adjustFriendCounts(10, 11, -1));
+        assertIndexed(() -> userRepository.decrementFriendCountsOfFriends(10));
+        assertIndexed(() -> userRepository.deleteFriendshipsOfUser(10));
+        assertIndexed(() -> userRepository.deleteFriendshipsToUser(10));
+    }
+
+    @Test
+    public void testCounterWrites() {
+        assertIndexed(() -> userRepository.adjustPostCount(10, 1));
+        assertIndexed(() -> userRepository.reconcileCounters(1, 100));
+    }
+
+    @Test
+    public void testFindPostsWithUserByIds() {
+        assertIndexed(() -> postRepository.findPostsWithUserByIds(List.of(1L, 2L, 3L)));
+    }
+
+    @Test
+    public void testListTimelinePostIds() {
+        assertIndexed(() -> postRepository.listTimelinePostIds(10, 20));
+        assertIndexed(() -> postRepository.listTimelinePostIdsBefore(10, POSTED_FROM.plusMinutes(30), 30, 20));
+    }
+
+    @Test
+    public void testTimelineWrites() {
+        assertIndexed(() -> {
+            jdbcTemplate.update("INSERT INTO posts (id, user_id, title, posted_on) VALUES (?, 10, 'New post', ?)", USERS * POSTS_PER_USER + 1, LocalDateTime.now());
+            recorder.start();
+            postRepository.fanOutPost(USERS * POSTS_PER_USER + 1);
+        });
+        assertIndexed(() -> postRepository.copyPostsToTimeline(10, 500));
+        assertIndexed(() -> postRepository.removePostsFromTimeline(10, 11));
+    }
+
+    @Test
+    public void testTimelineRebuild() {
+        assertIndexed(() -> {
+            postRepository.clearTimelines(1, 100);
+            postRepository.fillTimelines(1, 100);
+        });
+    }
+
+    @Test
+    public void testThumbnailQueries() {
+        assertIndexed(() -> postRepository.findThumbnailHash(2, "small"));
+        assertIndexed(() -> postRepository.listThumbnailHashes(2));
+        assertIndexed(() -> postRepository.listPostIdsWithoutThumbnails(2000, 2, 100));
+        assertIndexed(() -> postRepository.saveThumbnail(1, "small", HASH, 512, 100, 100));
+        assertIndexed(() -> postRepository.saveDimensions(1, 100, 100));
+        assertIndexed(() -> postRepository.findReferencedHashes(List.of(HASH, "b".repeat(64))));
+    }
+
+    // The statements are recorded from the start of the action, unless it starts the recording itself after preparing
+    // its data. Everything is rolled back, so every test sees the seeded rows.
+    private void assertIndexed(Runnable action) {
+        cacheEvictor.evictAll();
+        List<StatementRecorder.RecordedStatement> statements = transactionTemplate.execute(status -> {
+            status.setRollbackOnly();
+            List<StatementRecorder.RecordedStatement> recorded;
+            recorder.start();
+            try {
+                action.run();
+            } finally {
+                recorded = recorder.stop();
+            }
+            for(StatementRecorder.RecordedStatement statement : recorded) {
+                String plan = explain(statement);
+                List<String> scans = isH2() ? findH2Scans(plan) : findMySqlScans(plan);
+                if(!scans.isEmpty()) {
+                    fail("The statement reads " + scans + " without a condition:\n" + statement.sql() + "\nThe plan is:\n" + plan);
+                }
+            }
+            return recorded;
+        });
+        assertFalse(statements.isEmpty(), "No statement was run.");
+    }
+
+    // MariaDB Connector/J sends the statements with the values written into them, unless server side prepared statements
+    // are turned on, so the planner folds the checks of the missing search parameters. The plan is asked for the same way.
+    private String explain(StatementRecorder.RecordedStatement statement) {
+        return jdbcTemplate.execute((ConnectionCallback<String>) connection -> {
+            try(Statement explain = connection.createStatement();
+                ResultSet resultSet = explain.executeQuery("EXPLAIN " + withLiterals(statement))) {
+                ResultSetMetaData metaData = resultSet.getMetaData();
+                StringBuilder plan = new StringBuilder();
+                while(resultSet.next()) {
+                    for(int i = 1; i <= metaData.getColumnCount(); i++) {
+                        if(metaData.getColumnCount() > 1) {
+                            plan.append(metaData.getColumnLabel(i).toLowerCase()).append('=');
+                        }
+                        plan.append(resultSet.getString(i)).append(i < metaData.getColumnCount() ? "\t" : "\n");
+                    }
+                }
+                return plan.toString();
+            }
+        });
+    }
+
+    private String withLiterals(StatementRecorder.RecordedStatement statement) {
+        StringBuilder sql = new StringBuilder();
+        Iterator<Object> parameters = statement.parameters().iterator();
+        boolean quoted = false;
+        for(char c : statement.sql().toCharArray()) {
+            if(c == '\'') {
+                quoted = !quoted;
+            }
+            if(c == '?' && !quoted) {
+                sql.append(literal(parameters.next()));
+            } else {
+                sql.append(c);
+            }
+        }
+        return sql.toString();
+    }
+
+    private String literal(Object value) {
+        if(value == null) {
+            return "NULL";
+        } else if(value instanceof Number || value instanceof Boolean) {
+            return value.toString();
+        } else if(value instanceof Timestamp || value instanceof LocalDateTime) {
+            return "TIMESTAMP '" + value.toString().replace('T', ' ') + "'";
+        } else if(value instanceof Date || value instanceof LocalDate) {
+            return "DATE '" + value + "'";
+        }
+        return "'" + value.toString().replace("'", "''") + "'";
+    }
+
+    // A table scan, or an index read from one end to the other, is only fine for a MAX or MIN read from the index. H2
+    // shows the conditions on the later columns of an index too, but it can only search by the first one.
+    private List<String> findH2Scans(String plan) {
+        List<String> scans = new ArrayList<>();
+        Matcher matcher = H2_INDEX.matcher(plan);
+        int from = 0;
+        while(matcher.find(from)) {
+            String index = matcher.group(1) + "." + matcher.group(2);
+            if(index.endsWith(".tableScan")) {
+                scans.add(index);
+            } else if(matcher.group(3) == null ? matcher.group(4) == null : !searchesFirstColumn(matcher.group(1), matcher.group(2), matcher.group(3))) {
+                scans.add(index);
+            }
+            // The condition may hold the plan of a subquery
+            from = matcher.end(2);
+        }
+        return scans;
+    }
+
+    private boolean searchesFirstColumn(String schema, String index, String condition) {
+        String firstColumn = jdbcTemplate.queryForObject(
+                "SELECT COLUMN_NAME FROM INFORMATION_SCHEMA.INDEX_COLUMNS WHERE INDEX_SCHEMA = ? AND INDEX_NAME = ? AND ORDINAL_POSITION = 1",
+                String.class, schema, index);
+        for(String part : H2_CONDITIONS.split(condition.trim())) {
+            if(part.split("[ (]", 2)[0].equals(firstColumn)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // ALL is a table scan and index is a scan of a whole index, the temporary tables of the subqueries are not counted
+    private List<String> findMySqlScans(String plan) {
+        List<String> scans = new ArrayList<>();
+        for(String row : plan.split("\n")) {
+            String table = column(row, "table");
+            String type = column(row, "type");
+            if(table != null && !table.startsWith("<") && ("ALL".equals(type) || "index".equals(type))) {
+                scans.add(table);
+            }
+        }
+        return scans;
+    }
+
+    private String column(String row, String name) {
+        for(String column : row.split("\t")) {
+            if(column.startsWith(name + "=")) {
+                return column.substring(name.length() + 1);
+            }
+        }
+        return null;
+    }
+
+    private boolean isH2() {
+        return jdbcTemplate.execute((ConnectionCallback<Boolean>) connection -> connection.getMetaData().getDatabaseProductName().equals("H2"));
+    }
+}
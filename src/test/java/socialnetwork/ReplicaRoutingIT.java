@@ -0,0 +1,170 @@
+package socialnetwork;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.transaction.support.TransactionTemplate;
+import socialnetwork.cache.EntityCacheEvictor;
+import socialnetwork.dtos.UserDto;
+import socialnetwork.models.RequestParameter;
+import socialnetwork.repositories.UserRepository;
+import socialnetwork.services.UserChangedEvent;
+import socialnetwork.services.UserService;
+
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+// The replica is a second database, which is kept in sync by hand. It gets a user the primary does not have,
+// so the responses tell which database served them.
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "socialnetwork.datasource.replicas[0].url=" + ReplicaRoutingIT.REPLICA_URL,
+        "socialnetwork.datasource.replicas[0].username=sa",
+        "socialnetwork.datasource.replicas[0].password="
+})
+@Sql(statements = {
+        "INSERT INTO users (id, username, email, password, registered_on) VALUES (1, 'lifelover', 'springishere@gmail.com', '39d1da1f4f9fda75ac2c0b29b76c2149fe57256e3240ce35e1e74d6b6d898222', '2023-04-10 15:00:00')",
+        "INSERT INTO personal_data (user_id) VALUES (1)"
+})
+@Sql(statements = {
+        "DELETE FROM personal_data",
+        "DELETE FROM change_log",
+        "DELETE FROM users"
+        }, executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+class ReplicaRoutingIT {
+
+    static final String REPLICA_URL = "jdbc:h2:mem:replica;MODE=MySQL;DB_CLOSE_DELAY=-1";
+
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    private static JdbcTemplate replica;
+
+    @Autowired
+    private WebTestClient client;
+
+    @Autowired
+    private JdbcTemplate primary;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private EntityCacheEvictor entityCacheEvictor;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @BeforeAll
+    static void createReplica() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(REPLICA_URL, "sa", "");
+        Flyway.configure().dataSource(dataSource).load().migrate();
+        replica = new JdbcTemplate(dataSource);
+        replica.update("INSERT INTO users (id, username, email, password, registered_on) VALUES (1, 'lifelover', 'springishere@gmail.com', '39d1da1f4f9fda75ac2c0b29b76c2149fe57256e3240ce35e1e74d6b6d898222', '2023-04-10 15:00:00')");
+        replica.update("INSERT INTO users (id, username, email, password, registered_on) VALUES (2, 'replicaonly', 'replicaonly@gmail.com', '39d1da1f4f9fda75ac2c0b29b76c2149fe57256e3240ce35e1e74d6b6d898222', '2023-04-10 16:00:00')");
+        replica.update("INSERT INTO personal_data (user_id) VALUES (1)");
+        replica.update("INSERT INTO personal_data (user_id) VALUES (2)");
+    }
+
+    @Test
+    public void testReadOnlyRequestsAreServedByReplica() {
+        await(() -> searchUsers() == 2);
+
+        // The profiles are cached, so they are always loaded from the primary
+        client.get()
+                .uri("/api/users/{id}", 2)
+                .exchange()
+                .expectStatus().isNotFound();
+        client.get()
+                .uri("/api/users/{id}", 1)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(UserDto.class).value(user -> assertEquals("lifelover", user.getUsername()));
+
+        assertTrue(meterRegistry.get("datasource.routing").tag("pool", "replica-1").functionCounter().count() > 0);
+        assertTrue(meterRegistry.get("datasource.routing").tag("pool", "primary").functionCounter().count() > 0);
+        assertNotNull(meterRegistry.find("hikaricp.connections").tag("pool", "replica-1").gauge());
+    }
+
+    @Test
+    public void testLaggingReplicaIsSkipped() {
+        await(() -> searchUsers() == 2);
+        double fallbacks = meterRegistry.get("datasource.routing.fallbacks").functionCounter().count();
+
+        String change = "INSERT INTO change_log (id, entity, entity_id, origin, changed_on) VALUES (1, 'USER', 1, 'replica-routing-test', CURRENT_TIMESTAMP)";
+        primary.update(change);
+
+        await(() -> searchUsers() == 1);
+        assertTrue(meterRegistry.get("datasource.routing.fallbacks").functionCounter().count() > fallbacks);
+        assertTrue(meterRegistry.get("datasource.replica.lag").tag("pool", "replica-1").gauge().value() > 0.5);
+
+        replica.update(change);
+
+        await(() -> searchUsers() == 2);
+        replica.update("DELETE FROM change_log");
+    }
+
+    @Test
+    public void testReplicaReadsUseButDoNotFillSecondLevelCache() {
+        await(() -> searchUsers() == 2);
+
+        // The read-only transactions are served by the replica, the primary must not see what they loaded
+        assertTrue(userRepository.findById(2L).isPresent());
+        assertTrue(transactionTemplate.execute(status -> userRepository.findById(2L)).isEmpty());
+
+        // The replica may not have the change yet, so the search result is already stale when it is put
+        entityCacheEvictor.onUserChanged(new UserChangedEvent(1L, "lifelover", "springishere@gmail.com", null));
+        assertEquals(2, searchUsers());
+        assertEquals(1, transactionTemplate.execute(status ->
+                userService.findUsersByParams(new RequestParameter(), 10, null, false, false)).users().size());
+
+        // The cached entities are read by the replica transactions once they are older than the allowed lag
+        transactionTemplate.execute(status -> userRepository.findById(1L));
+        replica.update("UPDATE users SET username = 'replicaname' WHERE id = 1");
+        try {
+            await(() -> "lifelover".equals(userRepository.findById(1L).orElseThrow().getUsername()));
+        } finally {
+            replica.update("UPDATE users SET username = 'lifelover' WHERE id = 1");
+        }
+    }
+
+    // The databases differ on purpose, a cached result would not tell which one has served the search
+    private int searchUsers() {
+        entityCacheEvictor.evictAll();
+        return client.get()
+                .uri("/api/users")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(UserDto.class).returnResult().getResponseBody().size();
+    }
+
+    private void await(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while(!condition.getAsBoolean()) {
+            if(System.currentTimeMillis() > deadline) {
+                fail("The condition was not met in " + TIMEOUT_MILLIS + " ms.");
+            }
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package socialnetwork;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.jdbc.Sql;
+import socialnetwork.cache.EntityCacheEvictor;
+import socialnetwork.dtos.ContentDto;
+import socialnetwork.dtos.ModifyPersonalDataCommand;
+import socialnetwork.models.Post;
+import socialnetwork.models.RequestParameter;
+import socialnetwork.models.User;
+import socialnetwork.repositories.PostRepository;
+import socialnetwork.repositories.UserRepository;
+import socialnetwork.services.ImportService;
+import socialnetwork.services.PostService;
+import socialnetwork.services.RelationshipService;
+import socialnetwork.services.UserSearchResult;
+import socialnetwork.services.UserService;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.function.LongConsumer;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// The change log poller would add its own statements to the count, so it is slowed down for these tests
+@SpringBootTest(properties = "socialnetwork.change-log.poll-interval=1h")
+@Import(StatementCounter.class)
+@Sql(statements = {
+        "INSERT INTO users (id, username, email, password, registered_on) VALUES (1, 'lifelover', 'springishere@gmail.com', '39d1da1f4f9fda75ac2c0b29b76c2149fe57256e3240ce35e1e74d6b6d898222', '2023-04-10 15:00:00')",
+        "INSERT INTO users (id, username, email, password, registered_on) VALUES (2, 'muddyboots', 'putonyourspringboots@gmail.com', '39d1da1f4f9fda75ac2c0b29b76c2149fe57256e3240ce35e1e74d6b6d898222', '2023-04-10 16:00:00')",
+        "INSERT INTO personal_data (user_id, real_name, city) VALUES (1, 'Gipsz Jakab', 'Budapest')",
+        "INSERT INTO personal_data (user_id) VALUES (2)",
+        "INSERT INTO posts (id, user_id, title, description, posted_on) VALUES (1, 1, 'Let''s rock!', 'This is the message for today', '2023-04-11 10:00:00')",
+        "INSERT INTO files (post_id, filename, mime_type, content_hash, content_length) VALUES (1, 'image.jpg', 'image/jpeg', '" + SecondLevelCacheIT.HASH + "', 1024)"
+})
+@Sql(statements = {
+        "DELETE FROM thumbnails",
+        "DELETE FROM timelines",
+        "DELETE FROM files",
+        "DELETE FROM posts",
+        "DELETE FROM personal_data",
+        "DELETE FROM users_to_users",
+        "DELETE FROM change_log",
+        "DELETE FROM users"
+        }, executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+class SecondLevelCacheIT {
+
+    static final String HASH = "0123456789abcdef0123456789abcdef0123456789abcdef0123456789abcdef";
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PostRepository postRepository;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private PostService postService;
+
+    @Autowired
+    private RelationshipService relationshipService;
+
+    @Autowired
+    private ImportService importService;
+
+    @Autowired
+    private EntityCacheEvictor entityCacheEvictor;
+
+    @Autowired
+    private StatementCounter statementCounter;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @BeforeEach
+    public void evictCaches() {
+        entityCacheEvictor.evictAll();
+    }
+
+    @Test
+    public void testRepeatedEntityReadsAreServedFromCache() {
+        User cold = measure(() -> userRepository.findById(1L).orElseThrow(), statements -> assertTrue(statements > 0));
+        User warm = measure(() -> userRepository.findById(1L).orElseThrow(), statements -> assertEquals(0, statements));
+
+        assertEquals("Gipsz Jakab", cold.getPersonalData().getRealName());
+        assertEquals("Gipsz Jakab", warm.getPersonalData().getRealName());
+        assertEquals("Budapest", warm.getPersonalData().getCity());
+
+        measure(() -> postService.getContentOfPost(1, null), statements -> assertTrue(statements > 0));
+        ContentDto content = measure(() -> postService.getContentOfPost(1, null), statements -> assertEquals(0, statements));
+
+        assertEquals(HASH, content.getContentHash());
+    }
+
+    @Test
+    public void testWritesKeepCachedEntitiesConsistent() {
+        userRepository.findById(1L);
+
+        userService.modifyPersonalData(1, new ModifyPersonalDataCommand("Kovács Éva", null, "Szeged"));
+        userRepository.findById(1L);
+        User modified = measure(() -> userRepository.findById(1L).orElseThrow(), statements -> assertEquals(0, statements));
+        assertEquals("Kovács Éva", modified.getPersonalData().getRealName());
+        assertEquals("Szeged", modified.getPersonalData().getCity());
+
+        // The friend counters are changed by native updates, the users they change are evicted
+        relationshipService.saveRelationship(1, 2);
+        User befriended = measure(() -> userRepository.findById(1L).orElseThrow(), statements -> assertTrue(statements > 0));
+        assertEquals(1, befriended.getFriendCount());
+
+        // A native write of an unrelated table leaves the cached users alone
+        postRepository.saveThumbnail(1, "small", HASH, 512, 160, 120);
+        measure(() -> userRepository.findById(1L).orElseThrow(), statements -> assertEquals(0, statements));
+    }
+
+    @Test
+    public void testRepeatedSearchesAreServedFromQueryCache() {
+        RequestParameter params = new RequestParameter();
+
+        UserSearchResult cold = measure(() -> userService.findUsersByParams(params, 10, null, true, false), statements -> assertEquals(3, statements));
+        UserSearchResult warm = measure(() -> userService.findUsersByParams(params, 10, null, true, false), statements -> assertEquals(0, statements));
+
+        assertEquals(2, cold.total());
+        assertEquals(2, warm.total());
+        assertEquals(cold.users().stream().map(user -> user.getPersonalData().getRealName()).toList(),
+                warm.users().stream().map(user -> user.getPersonalData().getRealName()).toList());
+
+        // The import writes with plain JDBC, its events evict the cached results
+        String line = "{\"username\":\"springboots\",\"email\":\"springboots@gmail.com\",\"password\":\"12345678\"}";
+        importService.importUsers(new ByteArrayInputStream(line.getBytes(StandardCharsets.UTF_8)), OutputStream.nullOutputStream());
+
+        assertEquals(3, userService.findUsersByParams(params, 10, null, true, false).total());
+    }
+
+    @Test
+    public void testSearchesStayCachedWhileFriendshipsChange() {
+        RequestParameter params = new RequestParameter();
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+        statistics.clear();
+        try {
+            for(int i = 0; i < 10; i++) {
+                UserSearchResult result = userService.findUsersByParams(params, 10, null, true, false);
+                assertEquals(i % 2, result.users().get(0).getFriendCount());
+                assertEquals(i % 2, userRepository.findById(2L).orElseThrow().getFriendCount());
+                measure(() -> postService.getContentOfPost(1, null), statements -> assertTrue(statements <= 1));
+                if(i % 2 == 0) {
+                    relationshipService.saveRelationship(1, 2);
+                } else {
+                    relationshipService.removeRelationship(1, 2);
+                }
+            }
+
+            // Only the first search and count are read from the database
+            CacheRegionStatistics searches = statistics.getQueryRegionStatistics(UserRepository.SEARCH_REGION);
+            assertEquals(2, searches.getMissCount());
+            assertEquals(18, searches.getHitCount());
+            CacheRegionStatistics posts = statistics.getDomainDataRegionStatistics(Post.class.getName());
+            assertTrue(posts.getHitCount() >= 9);
+        } finally {
+            statistics.setStatisticsEnabled(false);
+        }
+    }
+
+    private <T> T measure(Supplier<T> reads, LongConsumer check) {
+        statementCounter.reset();
+        T result = reads.get();
+        check.accept(statementCounter.getExecutions());
+        return result;
+    }
+}
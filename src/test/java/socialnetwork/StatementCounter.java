@@ -0,0 +1,29 @@
+package socialnetwork;
+
+import org.springframework.boot.test.context.TestComponent;
+
+import java.lang.reflect.Method;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicLong;
+
+@TestComponent
+public class StatementCounter extends JdbcProxyPostProcessor {
+
+    private final AtomicLong executions = new AtomicLong();
+
+    public long getExecutions() {
+        return executions.get();
+    }
+
+    public void reset() {
+        executions.set(0);
+    }
+
+    // Every execute call is a round trip to the database, a whole JDBC batch included
+    @Override
+    protected void beforeCall(Object target, Method method, Object[] args, String sql) {
+        if(target instanceof Statement && method.getName().startsWith("execute")) {
+            executions.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package socialnetwork;
+
+import org.springframework.boot.test.context.TestComponent;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+
+// Records the prepared statements run while recording is on, together with the values bound to their parameters.
+// Only the statements of the thread that started recording are kept, the scheduled jobs run their own.
+@TestComponent
+public class StatementRecorder extends JdbcProxyPostProcessor {
+
+    private final List<RecordedStatement> statements = new ArrayList<>();
+
+    private final Map<Object, Map<Integer, Object>> parameters = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private Thread recordingThread;
+
+    public synchronized void start() {
+        statements.clear();
+        recordingThread = Thread.currentThread();
+    }
+
+    public synchronized List<RecordedStatement> stop() {
+        recordingThread = null;
+        return List.copyOf(statements);
+    }
+
+    @Override
+    protected void beforeCall(Object target, Method method, Object[] args, String sql) {
+        if(sql == null) {
+            return;
+        }
+        if(method.getName().startsWith("set") && args != null && args.length > 1 && args[0] instanceof Integer index) {
+            parameters.computeIfAbsent(target, statement -> new TreeMap<>()).put(index, method.getName().equals("setNull") ? null : args[1]);
+        } else if(method.getName().startsWith("execute") && (args == null || args.length == 0)) {
+            Map<Integer, Object> bound = parameters.getOrDefault(target, Map.of());
+            record(new RecordedStatement(sql, new ArrayList<>(bound.values())));
+        }
+    }
+
+    private synchronized void record(RecordedStatement statement) {
+        if(recordingThread == Thread.currentThread()) {
+            statements.add(statement);
+        }
+    }
+
+    public record RecordedStatement(String sql, List<Object> parameters) {
+    }
+}
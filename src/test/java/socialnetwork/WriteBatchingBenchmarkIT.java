@@ -0,0 +1,154 @@
+package socialnetwork;
+
+import jakarta.persistence.EntityManager;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.transaction.support.TransactionTemplate;
+import socialnetwork.models.PersonalData;
+import socialnetwork.models.Post;
+import socialnetwork.models.PostFile;
+import socialnetwork.models.User;
+import socialnetwork.services.ImportService;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.function.IntConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = "socialnetwork.import.batch-size=500")
+@Import(StatementCounter.class)
+@Sql(statements = {
+        "DELETE FROM files",
+        "DELETE FROM posts",
+        "DELETE FROM personal_data",
+        "DELETE FROM users"
+        }, executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+@Slf4j
+class WriteBatchingBenchmarkIT {
+
+    private static final int USERS = 500;
+
+    private static final int ROUNDS = 3;
+
+    private static final String HASH = "a".repeat(64);
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private ImportService importService;
+
+    @Autowired
+    private StatementCounter statementCounter;
+
+    @Test
+    public void testBatchedUserCreation() {
+        persistUsers("warmup", 50, null);
+        Result single = measure("Persisting users one by one", round -> persistUsers("single" + round + "-", USERS, 1));
+        Result batched = measure("Persisting users in batches", round -> persistUsers("batched" + round + "-", USERS, null));
+
+        assertTrue(batched.roundTrips() * 10 < single.roundTrips());
+        assertTrue(batched.rowsPerSecond() > single.rowsPerSecond());
+    }
+
+    @Test
+    public void testBatchedPostCreation() {
+        persistUsers("owner", 1, null);
+        persistPosts("warmup", 50, null);
+        Result single = measure("Persisting posts one by one", round -> persistPosts("single" + round + "-", USERS, 1));
+        Result batched = measure("Persisting posts in batches", round -> persistPosts("batched" + round + "-", USERS, null));
+
+        assertTrue(batched.roundTrips() * 10 < single.roundTrips());
+        assertTrue(batched.rowsPerSecond() > single.rowsPerSecond());
+    }
+
+    @Test
+    public void testBatchedUserUpdates() {
+        importUsers("user", USERS);
+        updateEmails("warmup", 1);
+        Result single = measure("Updating users one by one", round -> updateEmails("single" + round + "-", 1));
+        Result batched = measure("Updating users in batches", round -> updateEmails("batched" + round + "-", null));
+
+        assertTrue(batched.roundTrips() * 10 < single.roundTrips());
+    }
+
+    private void persistUsers(String prefix, int users, Integer batchSize) {
+        transactionTemplate.executeWithoutResult(status -> {
+            if(batchSize != null) {
+                entityManager.unwrap(Session.class).setJdbcBatchSize(batchSize);
+            }
+            for(int i = 0; i < users; i++) {
+                User user = new User(prefix + i, prefix + i + "@example.com", HASH);
+                user.setPersonalData(new PersonalData());
+                entityManager.persist(user);
+            }
+        });
+    }
+
+    private void persistPosts(String prefix, int posts, Integer batchSize) {
+        transactionTemplate.executeWithoutResult(status -> {
+            if(batchSize != null) {
+                entityManager.unwrap(Session.class).setJdbcBatchSize(batchSize);
+            }
+            User owner = entityManager.createQuery("SELECT u FROM User u WHERE u.username = 'owner0'", User.class).getSingleResult();
+            for(int i = 0; i < posts; i++) {
+                Post post = new Post(prefix + i, null, new PostFile(prefix + i + ".jpg", "image/jpeg", HASH, 1024L, 640, 480));
+                post.setUser(owner);
+                entityManager.persist(post);
+            }
+        });
+    }
+
+    private void importUsers(String prefix, int users) {
+        String lines = IntStream.range(0, users)
+                .mapToObj(i -> "{\"username\":\"" + prefix + i + "\",\"email\":\"" + prefix + i + "@example.com\",\"password\":\"12345678\"}")
+                .collect(Collectors.joining("\n"));
+        importService.importUsers(new ByteArrayInputStream(lines.getBytes(StandardCharsets.UTF_8)), OutputStream.nullOutputStream());
+    }
+
+    private void updateEmails(String prefix, Integer batchSize) {
+        transactionTemplate.executeWithoutResult(status -> {
+            if(batchSize != null) {
+                entityManager.unwrap(Session.class).setJdbcBatchSize(batchSize);
+            }
+            int i = 0;
+            for(User user : entityManager.createQuery("SELECT u FROM User u WHERE u.username LIKE 'user%'", User.class).getResultList()) {
+                user.setEmail(prefix + i++ + "@example.com");
+            }
+            assertEquals(USERS, i);
+        });
+    }
+
+    // The best of a few rounds is kept, so a pause of the JVM does not decide the comparison
+    private Result measure(String name, IntConsumer writes) {
+        Result best = null;
+        for(int round = 0; round < ROUNDS; round++) {
+            statementCounter.reset();
+            long start = System.nanoTime();
+            writes.accept(round);
+            long elapsed = System.nanoTime() - start;
+            Result result = new Result(statementCounter.getExecutions(), USERS * 1_000_000_000L / Math.max(elapsed, 1));
+            if(best == null || result.rowsPerSecond() > best.rowsPerSecond()) {
+                best = result;
+            }
+        }
+        log.info("{}: {} rows in {} round trips, {} rows/s", name, USERS, best.roundTrips(), best.rowsPerSecond());
+        return best;
+    }
+
+    private record Result(long roundTrips, long rowsPerSecond) {
+    }
+}
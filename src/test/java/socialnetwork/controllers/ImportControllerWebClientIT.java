@@ -0,0 +1,166 @@
+package socialnetwork.controllers;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import socialnetwork.dtos.RelationshipDto;
+import socialnetwork.dtos.UserDto;
+import socialnetwork.cache.EntityCacheEvictor;
+import socialnetwork.cache.UserCache;
+import socialnetwork.graph.FriendshipGraph;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.groups.Tuple.tuple;
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@Sql(statements = {
+        "INSERT INTO users (id, username, email, password, registered_on) VALUES (1, 'lifelover', 'springishere@gmail.com', '39d1da1f4f9fda75ac2c0b29b76c2149fe57256e3240ce35e1e74d6b6d898222', '2023-04-10 15:00:00')",
+        "INSERT INTO users (id, username, email, password, registered_on) VALUES (2, 'muddyboots', 'putonyourspringboots@gmail.com', '39d1da1f4f9fda75ac2c0b29b76c2149fe57256e3240ce35e1e74d6b6d898222', '2023-04-10 16:00:00')",
+        "INSERT INTO personal_data (user_id) VALUES (1), (2)"
+})
+@Sql(statements = {
+        "DELETE FROM personal_data",
+        "DELETE FROM users_to_users",
+        "DELETE FROM change_log",
+        "DELETE FROM users"
+        }, executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+class ImportControllerWebClientIT {
+
+    @Autowired
+    private WebTestClient client;
+
+    @Autowired
+    private FriendshipGraph friendshipGraph;
+
+    @Autowired
+    private UserCache userCache;
+
+    @Autowired
+    private EntityCacheEvictor entityCacheEvictor;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @BeforeEach
+    public void reloadFriendshipGraph() {
+        friendshipGraph.reload();
+        userCache.invalidateAll();
+        entityCacheEvictor.evictAll();
+    }
+
+    @Test
+    public void testImportUsers() throws Exception {
+        List<JsonNode> report = importLines("/api/import/users",
+                "{\"username\":\"springboots\",\"email\":\"codingisfun@gmail.com\",\"password\":\"12345678\"}",
+                "{\"username\":\"summertime\",\"email\":\"sunshine\",\"password\":\"12345678\"}",
+                "",
+                "{\"username\":\"lifelover\",\"email\":\"other@gmail.com\",\"password\":\"12345678\"}",
+                "{\"username\":\"autumnleaves\",\"email\":\"fallingdown@gmail.com\",\"password\":\"12345678\"}",
+                "{\"username\":\"autumnleaves\",\"email\":\"winteriscoming@gmail.com\",\"password\":\"12345678\"}",
+                "not json");
+
+        assertThat(report)
+                .filteredOn(node -> node.has("line"))
+                .extracting(node -> node.get("line").asLong(), node -> node.get("error").asText())
+                .containsExactly(
+                        tuple(2L, "Email address is not valid."),
+                        tuple(4L, "The username is already in use: lifelover"),
+                        tuple(6L, "The username is already in use: autumnleaves"),
+                        tuple(7L, "The line is not a valid JSON object."));
+        JsonNode summary = report.get(report.size() - 1);
+        assertAll(
+                () -> assertTrue(summary.get("finished").asBoolean()),
+                () -> assertEquals(6, summary.get("processed").asLong()),
+                () -> assertEquals(2, summary.get("imported").asLong()),
+                () -> assertEquals(4, summary.get("failed").asLong())
+        );
+        assertThat(report).filteredOn(node -> node.has("finished") && !node.get("finished").asBoolean()).isNotEmpty();
+
+        client.get()
+                .uri("/api/users?username=autumnleaves")
+                .exchange()
+                .expectBodyList(UserDto.class)
+                .value(list -> assertThat(list)
+                        .singleElement()
+                        .extracting(UserDto::getEmail)
+                        .isEqualTo("fallingdown@gmail.com"));
+    }
+
+    @Test
+    public void testImportRelationships() throws Exception {
+        importLines("/api/import/users",
+                "{\"username\":\"springboots\",\"email\":\"codingisfun@gmail.com\",\"password\":\"12345678\"}");
+        long id3 = client.get()
+                .uri("/api/users?username=springboots")
+                .exchange()
+                .expectBodyList(UserDto.class)
+                .returnResult()
+                .getResponseBody()
+                .get(0)
+                .getId();
+
+        List<JsonNode> report = importLines("/api/import/relationships",
+                "{\"userId\":1,\"friendId\":2}",
+                "{\"userId\":2,\"friendId\":1}",
+                "{\"userId\":1,\"friendId\":" + id3 + "}",
+                "{\"userId\":1,\"friendId\":1}",
+                "{\"userId\":1,\"friendId\":42}",
+                "{\"userId\":2}");
+
+        assertThat(report)
+                .filteredOn(node -> node.has("line"))
+                .extracting(node -> node.get("line").asLong(), node -> node.get("error").asText())
+                .containsExactlyInAnyOrder(
+                        tuple(4L, "Can not add a user to it's own friend list."),
+                        tuple(5L, "User with id: 42 was not found."),
+                        tuple(6L, "The ID of the friend must not be null!"));
+        assertEquals(3, report.get(report.size() - 1).get("imported").asLong());
+
+        client.get()
+                .uri("/api/users/1/friends?full=true")
+                .exchange()
+                .expectBody(RelationshipDto.class)
+                .value(dto -> assertThat(dto.getFriends())
+                        .extracting(UserDto::getId)
+                        .containsExactlyInAnyOrder(2L, id3));
+
+        client.get()
+                .uri("/api/users/1")
+                .exchange()
+                .expectBody(UserDto.class)
+                .value(dto -> assertEquals(2, dto.getFriendCount()));
+
+        List<JsonNode> repeated = importLines("/api/import/relationships", "{\"userId\":" + id3 + ",\"friendId\":1}");
+        assertEquals(1, repeated.get(repeated.size() - 1).get("imported").asLong());
+    }
+
+    private List<JsonNode> importLines(String uri, String... lines) throws Exception {
+        String body = client.post()
+                .uri(uri)
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .bodyValue(String.join("\n", lines))
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                .expectBody(String.class)
+                .returnResult()
+                .getResponseBody();
+        List<JsonNode> nodes = new ArrayList<>();
+        for(String line : body.split("\n")) {
+            nodes.add(objectMapper.readTree(line));
+        }
+        return nodes;
+    }
+}
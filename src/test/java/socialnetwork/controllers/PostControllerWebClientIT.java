@@ -1,43 +1,83 @@
 package socialnetwork.controllers;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.MultipartConfigElement;
 import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.io.ByteArrayResource;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ProblemDetail;
 import org.springframework.http.client.MultipartBodyBuilder;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.jdbc.Sql;
+import org.springframework.test.web.reactive.server.EntityExchangeResult;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import org.springframework.util.MultiValueMap;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.reactive.function.BodyInserters;
+import socialnetwork.BinaryReadCounter;
 import socialnetwork.dtos.PostDataDto;
+import socialnetwork.dtos.PostPageDto;
+import socialnetwork.dtos.UserDto;
+import socialnetwork.jobs.ThumbnailBackfillJob;
+import socialnetwork.repositories.PostRepository;
+import socialnetwork.storage.BlobStore;
+import socialnetwork.storage.BlobSweeper;
+import socialnetwork.storage.StoredBlob;
+import socialnetwork.thumbnails.ThumbnailGenerator;
+import socialnetwork.thumbnails.ThumbnailProperties;
 import socialnetwork.utils.TimeMachine;
-
+import socialnetwork.cache.EntityCacheEvictor;
+import socialnetwork.cache.UserCache;
+import socialnetwork.graph.FriendshipGraph;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.*;
 
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@Import(BinaryReadCounter.class)
 @Sql(statements = {
         "INSERT INTO users (id, username, email, password, registered_on) VALUES (1, 'lifelover', 'springishere@gmail.com', '39d1da1f4f9fda75ac2c0b29b76c2149fe57256e3240ce35e1e74d6b6d898222', '2023-04-10 15:00:00')",
-        "INSERT INTO users (id, username, email, password, registered_on) VALUES (2, 'muddyboots', 'putonyourspringboots@gmail.com', '39d1da1f4f9fda75ac2c0b29b76c2149fe57256e3240ce35e1e74d6b6d898222', '2023-04-10 16:00:00')"
+        "INSERT INTO users (id, username, email, password, registered_on) VALUES (2, 'muddyboots', 'putonyourspringboots@gmail.com', '39d1da1f4f9fda75ac2c0b29b76c2149fe57256e3240ce35e1e74d6b6d898222', '2023-04-10 16:00:00')",
+        "INSERT INTO personal_data (user_id) VALUES (1), (2)"
 })
 @Sql(statements = {
         "DELETE FROM files",
         "DELETE FROM posts",
         "DELETE FROM personal_data",
         "DELETE FROM users_to_users",
+        "DELETE FROM change_log",
         "DELETE FROM users"
 }, executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
 class PostControllerWebClientIT {
@@ -47,9 +87,48 @@ class PostControllerWebClientIT {
     @Autowired
     private WebTestClient client;
 
+    @Autowired
+    private FriendshipGraph friendshipGraph;
+
+    @Autowired
+    private UserCache userCache;
+
+    @Autowired
+    private EntityCacheEvictor entityCacheEvictor;
+
+    @Autowired
+    private BinaryReadCounter binaryReadCounter;
+
     @LocalServerPort
     private String port;
 
+    @Value("${socialnetwork.blob-store.root}")
+    private Path blobStoreRoot;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PostRepository postRepository;
+
+    @Autowired
+    private ThumbnailGenerator thumbnailGenerator;
+
+    @Autowired
+    private ThumbnailProperties thumbnailProperties;
+
+    @Autowired
+    private BlobSweeper blobSweeper;
+
+    @Autowired
+    private BlobStore blobStore;
+
+    @Autowired
+    private MultipartConfigElement multipartConfig;
+
     @BeforeAll
     public static void init() {
         MultipartBodyBuilder builder = new MultipartBodyBuilder();
@@ -60,6 +139,13 @@ class PostControllerWebClientIT {
     }
 
 
+    @BeforeEach
+    public void reloadFriendshipGraph() {
+        friendshipGraph.reload();
+        userCache.invalidateAll();
+        entityCacheEvictor.evictAll();
+    }
+
     @Test
     public void testUploadPost() {
         TimeMachine.set(LocalDateTime.parse("2023-04-13T19:00:00"));
@@ -81,6 +167,8 @@ class PostControllerWebClientIT {
                 () -> assertEquals("Let,s rock!", dto.getTitle()),
                 () -> assertEquals("This is the message for today", dto.getDescription()),
                 () -> assertEquals("image.jpg", dto.getFilename()),
+                () -> assertEquals(1000, dto.getWidth()),
+                () -> assertEquals(885, dto.getHeight()),
                 () -> assertEquals(LocalDateTime.parse("2023-04-13T19:00:00"), dto.getPostedOn()),
                 () -> assertEquals(1L, dto.getUserId())
         );
@@ -109,6 +197,64 @@ class PostControllerWebClientIT {
                         .jsonPath("detail").isEqualTo("Only .jpg, .jpeg, .png extensions and image/jpeg, image/png content types are allowed.");
     }
 
+    @Test
+    public void testUploadPostWithForgedContent() throws IOException {
+        MultipartBodyBuilder builder = new MultipartBodyBuilder();
+        builder.part("title", "Let,s rock!");
+        builder.part("description", "This is the message for today");
+        builder.part("file", new ClassPathResource("test.txt")).filename("image.jpg").contentType(MediaType.IMAGE_JPEG);
+
+        client.post()
+                .uri("/api/posts?userId=1")
+                .contentType(MediaType.MULTIPART_FORM_DATA)
+                .body(BodyInserters.fromMultipartData(builder.build()))
+                .exchange()
+                .expectHeader().contentType(MediaType.APPLICATION_PROBLEM_JSON)
+                .expectStatus().isEqualTo(HttpStatus.NOT_ACCEPTABLE)
+                .expectBody()
+                .jsonPath("type").isEqualTo("socialnetwork/invalid-arguments")
+                .jsonPath("detail").isEqualTo("The content of the file is not a valid JPEG image.");
+
+        try (Stream<Path> incoming = Files.list(blobStoreRoot.resolve("incoming"))) {
+            assertThat(incoming).isEmpty();
+        }
+    }
+
+    @Test
+    public void testUploadPngPost() throws IOException {
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(30, 20, BufferedImage.TYPE_INT_ARGB), "png", png);
+        MultipartBodyBuilder builder = new MultipartBodyBuilder();
+        builder.part("title", "Transparent");
+        builder.part("description", "A small transparent image");
+        builder.part("file", new ByteArrayResource(png.toByteArray())).filename("image.png").contentType(MediaType.IMAGE_PNG);
+
+        client.post()
+                .uri("/api/posts?userId=1")
+                .contentType(MediaType.MULTIPART_FORM_DATA)
+                .body(BodyInserters.fromMultipartData(builder.build()))
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBody(PostDataDto.class)
+                .value(dto -> assertAll(
+                        () -> assertEquals(30, dto.getWidth()),
+                        () -> assertEquals(20, dto.getHeight())
+                ));
+
+        MultipartBodyBuilder mislabeled = new MultipartBodyBuilder();
+        mislabeled.part("title", "Transparent");
+        mislabeled.part("description", "A small transparent image");
+        mislabeled.part("file", new ByteArrayResource(png.toByteArray())).filename("image.jpg").contentType(MediaType.IMAGE_JPEG);
+        client.post()
+                .uri("/api/posts?userId=1")
+                .contentType(MediaType.MULTIPART_FORM_DATA)
+                .body(BodyInserters.fromMultipartData(mislabeled.build()))
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.NOT_ACCEPTABLE)
+                .expectBody()
+                .jsonPath("detail").isEqualTo("The content of the file is not a valid JPEG image.");
+    }
+
     @Test
     public void testUploadPostWithInvalidArgument() {
         MultipartBodyBuilder builder = new MultipartBodyBuilder();
@@ -147,6 +293,27 @@ class PostControllerWebClientIT {
 
     }
 
+    // Only the post upload is streamed, the servlet container keeps the same limits for any other multipart request
+    @Test
+    public void testOtherMultipartRequestsHaveTheUploadLimits() {
+        assertEquals(DataSize.ofMegabytes(2).toBytes(), multipartConfig.getMaxFileSize());
+        assertEquals(DataSize.ofMegabytes(2).toBytes(), multipartConfig.getMaxRequestSize());
+    }
+
+    @Test
+    public void testUploadPostOfNonExistingUserDiscardsFile() throws IOException {
+        client.post()
+                .uri("/api/posts?userId=42")
+                .contentType(MediaType.MULTIPART_FORM_DATA)
+                .body(BodyInserters.fromMultipartData(formData))
+                .exchange()
+                .expectStatus().isNotFound();
+
+        try (Stream<Path> incoming = Files.list(blobStoreRoot.resolve("incoming"))) {
+            assertThat(incoming).isEmpty();
+        }
+    }
+
     @Test
     public void testLoadPostContent() throws IOException {
         byte[] testfile;
@@ -173,6 +340,237 @@ class PostControllerWebClientIT {
                 .value(body -> assertArrayEquals(testfile, body));
     }
 
+    @Test
+    public void testLoadPostContentConditionally() throws IOException {
+        long postId = uploadPostOfUser(1);
+
+        String etag = client.get()
+                .uri("/api/posts/" + postId + "/content")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueMatches("ETag", "\"[0-9a-f]{64}\"")
+                .expectHeader().valueEquals("Cache-Control", "max-age=31536000, public, immutable")
+                .expectHeader().exists("Last-Modified")
+                .expectBody(byte[].class)
+                .returnResult()
+                .getResponseHeaders()
+                .getETag();
+
+        String hash = etag.substring(1, etag.length() - 1);
+        Path blob = blobStoreRoot.resolve(hash.substring(0, 2)).resolve(hash.substring(2, 4)).resolve(hash);
+        Path hidden = blob.resolveSibling(hash + ".hidden");
+        Files.move(blob, hidden);
+        try {
+            client.get()
+                    .uri("/api/posts/" + postId + "/content")
+                    .header("If-None-Match", etag)
+                    .exchange()
+                    .expectStatus().isNotModified()
+                    .expectHeader().valueEquals("ETag", etag)
+                    .expectBody().isEmpty();
+        } finally {
+            Files.move(hidden, blob);
+        }
+
+        client.get()
+                .uri("/api/posts/" + postId + "/content")
+                .header("If-None-Match", "\"other\"")
+                .exchange()
+                .expectStatus().isOk();
+    }
+
+    @Test
+    public void testLoadPostContentRange() throws IOException {
+        byte[] testfile = new ClassPathResource("image.jpg").getContentAsByteArray();
+        long postId = uploadPostOfUser(1);
+
+        client.get()
+                .uri("/api/posts/" + postId + "/content")
+                .header("Range", "bytes=10-19")
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.PARTIAL_CONTENT)
+                .expectHeader().valueEquals("Content-Range", "bytes 10-19/" + testfile.length)
+                .expectHeader().contentLength(10)
+                .expectBody(byte[].class)
+                .value(body -> assertArrayEquals(Arrays.copyOfRange(testfile, 10, 20), body));
+    }
+
+    @Test
+    public void testLoadPostContentFromCache() throws IOException {
+        byte[] content = uniqueImage();
+        long postId = uploadPostOfContent(content);
+        double hits = cacheGets("hit");
+        double misses = cacheGets("miss");
+        double resident = meterRegistry.get("content.cache.resident").gauge().value();
+
+        for(int i = 0; i < 2; i++) {
+            client.get()
+                    .uri("/api/posts/" + postId + "/content")
+                    .exchange()
+                    .expectStatus().isOk()
+                    .expectHeader().contentLength(content.length)
+                    .expectBody(byte[].class)
+                    .value(body -> assertArrayEquals(content, body));
+        }
+
+        assertEquals(misses + 1, cacheGets("miss"));
+        assertEquals(hits + 1, cacheGets("hit"));
+        assertEquals(resident + content.length, meterRegistry.get("content.cache.resident").gauge().value());
+
+        client.delete()
+                .uri("/api/posts/" + postId)
+                .exchange()
+                .expectStatus().isOk();
+
+        assertEquals(resident, meterRegistry.get("content.cache.resident").gauge().value());
+    }
+
+    @Test
+    public void testContentCacheEvictsLeastRecentlyUsed() throws IOException {
+        long[] ids = new long[5];
+        for(int i = 0; i < ids.length; i++) {
+            ids[i] = uploadPostOfContent(uniqueImage());
+        }
+        double evictions = meterRegistry.get("content.cache.evictions").functionCounter().count();
+
+        for(int i : new int[] {0, 1, 2, 3, 0, 4}) {
+            client.get()
+                    .uri("/api/posts/" + ids[i] + "/content")
+                    .exchange()
+                    .expectStatus().isOk();
+        }
+        assertThat(meterRegistry.get("content.cache.evictions").functionCounter().count()).isGreaterThan(evictions);
+        assertThat(meterRegistry.get("content.cache.resident").gauge().value()).isLessThanOrEqualTo(1024 * 1024);
+
+        double hits = cacheGets("hit");
+        client.get().uri("/api/posts/" + ids[0] + "/content").exchange().expectStatus().isOk();
+        assertEquals(hits + 1, cacheGets("hit"));
+        double misses = cacheGets("miss");
+        client.get().uri("/api/posts/" + ids[1] + "/content").exchange().expectStatus().isOk();
+        assertEquals(misses + 1, cacheGets("miss"));
+    }
+
+    // Four contents fit in the cache, so the blocks of the evicted ones are reused while other requests send them
+    @Test
+    public void testContentCacheServesIntactContentsWhileEvicting() throws Exception {
+        List<byte[]> contents = new ArrayList<>();
+        List<Long> ids = new ArrayList<>();
+        for(int i = 0; i < 6; i++) {
+            byte[] content = uniqueImage();
+            contents.add(content);
+            ids.add(uploadPostOfContent(content));
+        }
+        double evictions = meterRegistry.get("content.cache.evictions").functionCounter().count();
+
+        ExecutorService executor = Executors.newFixedThreadPool(6);
+        try {
+            List<Future<?>> requests = new ArrayList<>();
+            for(int i = 0; i < 60; i++) {
+                int index = (i * 7) % ids.size();
+                requests.add(executor.submit(() -> client.get()
+                        .uri("/api/posts/" + ids.get(index) + "/content")
+                        .exchange()
+                        .expectStatus().isOk()
+                        .expectBody(byte[].class)
+                        .value(body -> assertArrayEquals(contents.get(index), body))));
+            }
+            for(Future<?> request : requests) {
+                request.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertThat(meterRegistry.get("content.cache.evictions").functionCounter().count()).isGreaterThan(evictions);
+        assertThat(meterRegistry.get("content.cache.resident").gauge().value()).isLessThanOrEqualTo(1024 * 1024);
+    }
+
+    @Test
+    public void testLoadPostContentThumbnail() throws Exception {
+        long postId = uploadPostOfUser(1);
+
+        String original = client.get()
+                .uri("/api/posts/" + postId + "/content")
+                .exchange()
+                .expectBody(byte[].class)
+                .returnResult()
+                .getResponseHeaders()
+                .getETag();
+
+        byte[] thumbnail = awaitThumbnail(postId, "small");
+
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(thumbnail));
+        assertEquals(160, image.getWidth());
+        assertEquals(142, image.getHeight());
+        client.get()
+                .uri("/api/posts/" + postId + "/content?size=small")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType(MediaType.IMAGE_JPEG)
+                .expectHeader().value("ETag", etag -> assertNotEquals(original, etag));
+        assertThat(meterRegistry.get("thumbnail.generation").functionTimer().count()).isPositive();
+    }
+
+    @Test
+    public void testLoadPostContentWithUnknownSize() {
+        long postId = uploadPostOfUser(1);
+
+        client.get()
+                .uri("/api/posts/" + postId + "/content?size=huge")
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.NOT_ACCEPTABLE)
+                .expectBody(ProblemDetail.class)
+                .value(pd -> assertAll(
+                        () -> assertEquals("The thumbnail size 'huge' is unknown. Available sizes: small, medium.", pd.getDetail()),
+                        () -> assertEquals(URI.create("socialnetwork/invalid-arguments"), pd.getType())
+                ));
+    }
+
+    @Test
+    public void testThumbnailBackfillJob() throws Exception {
+        long postId = uploadPostOfUser(1);
+        awaitThumbnail(postId, "medium");
+        jdbcTemplate.update("DELETE FROM thumbnails WHERE post_id = ?", postId);
+
+        new ThumbnailBackfillJob(postRepository, thumbnailGenerator, thumbnailProperties).run(null);
+
+        assertEquals(2, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM thumbnails WHERE post_id = ?", Integer.class, postId));
+        assertEquals(Map.of("WIDTH", 480, "HEIGHT", 425), jdbcTemplate.queryForMap("SELECT width, height FROM thumbnails WHERE post_id = ? AND variant = 'medium'", postId));
+    }
+
+    @Test
+    public void testUploadPostWithTooManyPixels() throws IOException {
+        MultipartBodyBuilder builder = new MultipartBodyBuilder();
+        builder.part("title", "Blank");
+        builder.part("description", "A small file of a huge image");
+        builder.part("file", new ByteArrayResource(blankPng(8000, 6000))).filename("blank.png").contentType(MediaType.IMAGE_PNG);
+
+        client.post()
+                .uri("/api/posts?userId=1")
+                .body(BodyInserters.fromMultipartData(builder.build()))
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.NOT_ACCEPTABLE)
+                .expectBody()
+                .jsonPath("type").isEqualTo("socialnetwork/invalid-arguments")
+                .jsonPath("detail").isEqualTo("The image must not have more than 40000000 pixels.");
+    }
+
+    @Test
+    public void testThumbnailsAreNotDecodedFromTooManyPixels() throws Exception {
+        long postId = uploadPostOfUser(1);
+        awaitThumbnail(postId, "medium");
+        StoredBlob blob = blobStore.store(new ByteArrayInputStream(blankPng(8000, 6000)));
+        jdbcTemplate.update("UPDATE files SET content_hash = ?, content_length = ?, mime_type = 'image/png' WHERE post_id = ?", blob.hash(), blob.length(), postId);
+        jdbcTemplate.update("DELETE FROM thumbnails WHERE post_id = ?", postId);
+        entityCacheEvictor.evictAll();
+        double failed = meterRegistry.get("thumbnail.failed").functionCounter().count();
+
+        assertEquals(0, thumbnailGenerator.generate(postId));
+
+        assertEquals(failed + 1, meterRegistry.get("thumbnail.failed").functionCounter().count());
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM thumbnails WHERE post_id = ?", Integer.class, postId));
+    }
+
     @Test
     public void testLoadNonExistingPostContent() {
         client.get()
@@ -228,15 +626,153 @@ class PostControllerWebClientIT {
                 .exchange()
                 .expectStatus().isOk()
                 .expectHeader().contentType(MediaType.APPLICATION_JSON)
-                .expectBodyList(PostDataDto.class)
-                .value(list -> assertThat(list)
+                .expectBody(PostPageDto.class)
+                .value(page -> assertThat(page.getPosts())
                         .hasSize(3)
                         .extracting(PostDataDto::getId)
-                        .containsExactly(id3, id1, id2));
+                        .containsExactly(id3, id1, id2))
+                .value(page -> assertNull(page.getNext()));
+
+        TimeMachine.clear();
+    }
+
+    @Test
+    public void testListOrderedPostsOfFriendsInPages() {
+        client.put()
+                .uri("/api/users/1/2")
+                .exchange();
+
+        TimeMachine.set(LocalDateTime.parse("2023-04-10T10:00:00"));
+        long id1 = uploadPostOfUser(2);
+        long id2 = uploadPostOfUser(2);
+        TimeMachine.set(LocalDateTime.parse("2023-04-10T11:00:00"));
+        long id3 = uploadPostOfUser(2);
+
+        PostPageDto first = client.get()
+                .uri("api/posts?friendsOf=1&limit=2")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(PostPageDto.class)
+                .returnResult()
+                .getResponseBody();
+
+        assertThat(first.getPosts())
+                .extracting(PostDataDto::getId)
+                .containsExactly(id3, id2);
+        assertNotNull(first.getNext());
+
+        client.get()
+                .uri("api/posts?friendsOf=1&limit=2&next=" + first.getNext())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(PostPageDto.class)
+                .value(page -> assertThat(page.getPosts())
+                        .extracting(PostDataDto::getId)
+                        .containsExactly(id1))
+                .value(page -> assertNull(page.getNext()));
 
         TimeMachine.clear();
     }
 
+    // The pages are built from the cached posts, their time has to match the column, which keeps whole seconds
+    @Test
+    public void testListOrderedPostsOfFriendsInPagesWithinOneSecond() {
+        client.put()
+                .uri("/api/users/1/2")
+                .exchange();
+
+        TimeMachine.set(LocalDateTime.parse("2023-04-10T10:00:00.900"));
+        long id1 = uploadPostOfUser(2);
+        TimeMachine.set(LocalDateTime.parse("2023-04-10T10:00:00.100"));
+        long id2 = uploadPostOfUser(2);
+        TimeMachine.set(LocalDateTime.parse("2023-04-10T10:00:00.500"));
+        long id3 = uploadPostOfUser(2);
+        TimeMachine.clear();
+
+        List<Long> ids = new ArrayList<>();
+        String next = null;
+        do {
+            PostPageDto page = client.get()
+                    .uri("api/posts?friendsOf=1&limit=1" + (next == null ? "" : "&next=" + next))
+                    .exchange()
+                    .expectStatus().isOk()
+                    .expectBody(PostPageDto.class)
+                    .returnResult()
+                    .getResponseBody();
+            page.getPosts().forEach(post -> assertEquals(LocalDateTime.parse("2023-04-10T10:00:00"), post.getPostedOn()));
+            page.getPosts().forEach(post -> ids.add(post.getId()));
+            next = page.getNext();
+        } while(next != null);
+
+        assertThat(ids).containsExactly(id3, id2, id1);
+    }
+
+    @Test
+    public void testListOrderedPostsOfFriendsFollowsRelationshipChanges() {
+        long id = uploadPostOfUser(2);
+
+        client.put()
+                .uri("/api/users/1/2")
+                .exchange();
+
+        client.get()
+                .uri("api/posts?friendsOf=1")
+                .exchange()
+                .expectBody(PostPageDto.class)
+                .value(page -> assertThat(page.getPosts())
+                        .extracting(PostDataDto::getId)
+                        .containsExactly(id));
+
+        client.delete()
+                .uri("/api/users/1/2")
+                .exchange();
+
+        client.get()
+                .uri("api/posts?friendsOf=1")
+                .exchange()
+                .expectBody(PostPageDto.class)
+                .value(page -> assertThat(page.getPosts()).isEmpty());
+    }
+
+    @Test
+    public void testRequestsDoNotReadContentFromDatabase() throws IOException {
+        client.put()
+                .uri("/api/users/1/2")
+                .exchange();
+        long id = uploadPostOfUser(2);
+        uploadPostOfUser(2);
+
+        binaryReadCounter.reset();
+        client.get()
+                .uri("api/posts?friendsOf=1")
+                .exchange()
+                .expectStatus().isOk();
+        client.get()
+                .uri("/api/posts/" + id)
+                .exchange()
+                .expectStatus().isOk();
+        assertEquals(0, binaryReadCounter.getBytesRead());
+
+        client.get()
+                .uri("/api/posts/" + id + "/content")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentLength(new ClassPathResource("image.jpg").getFile().length());
+        assertEquals(0, binaryReadCounter.getBytesRead());
+    }
+
+    @Test
+    public void testListOrderedPostsOfFriendsWithInvalidCursor() {
+        client.get()
+                .uri("api/posts?friendsOf=1&next=abc")
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.NOT_ACCEPTABLE)
+                .expectHeader().contentType(MediaType.APPLICATION_PROBLEM_JSON)
+                .expectBody()
+                .jsonPath("type").isEqualTo("socialnetwork/invalid-arguments")
+                .jsonPath("detail").isEqualTo("The page cursor 'abc' is invalid.");
+    }
+
     @Test
     public void testGetPostById() {
         TimeMachine.set(LocalDateTime.parse("2023-04-16T20:00:00"));
@@ -275,6 +811,12 @@ class PostControllerWebClientIT {
                 .getResponseBody()
                 .getId();
 
+        client.get()
+                .uri("/api/users/1")
+                .exchange()
+                .expectBody(UserDto.class)
+                .value(dto -> assertEquals(1, dto.getPostCount()));
+
         client.delete()
                 .uri("/api/posts/" + id)
                 .exchange();
@@ -285,5 +827,130 @@ class PostControllerWebClientIT {
                 .expectStatus().isNotFound()
                 .expectBody(ProblemDetail.class)
                 .value(pd -> assertEquals("Post with id: " + id + " was not found.", pd.getDetail()));
+
+        client.get()
+                .uri("/api/users/1")
+                .exchange()
+                .expectBody(UserDto.class)
+                .value(dto -> assertEquals(0, dto.getPostCount()));
+    }
+
+    // The two images only differ after their end marker, so their thumbnails are the same blobs
+    @Test
+    public void testBlobSweeperDeletesUnreferencedContent() throws Exception {
+        long deletedId = uploadPostOfContent(uniqueImage());
+        long keptId = uploadPostOfContent(uniqueImage());
+        for(long id : new long[]{deletedId, keptId}) {
+            awaitThumbnail(id, "small");
+            awaitThumbnail(id, "medium");
+        }
+        String deletedHash = jdbcTemplate.queryForObject("SELECT content_hash FROM files WHERE post_id = ?", String.class, deletedId);
+        String keptHash = jdbcTemplate.queryForObject("SELECT content_hash FROM files WHERE post_id = ?", String.class, keptId);
+        List<String> thumbnailHashes = jdbcTemplate.queryForList("SELECT content_hash FROM thumbnails WHERE post_id = ?", String.class, deletedId);
+
+        client.delete()
+                .uri("/api/posts/" + deletedId)
+                .exchange()
+                .expectStatus().isOk();
+        blobSweeper.sweep(Instant.now().plusSeconds(1));
+
+        assertFalse(Files.exists(blobPath(deletedHash)));
+        assertTrue(Files.exists(blobPath(keptHash)));
+        assertThat(thumbnailHashes).hasSize(2).allMatch(hash -> Files.exists(blobPath(hash)));
+        client.get()
+                .uri("/api/posts/" + keptId + "/content")
+                .exchange()
+                .expectStatus().isOk();
+        assertThat(meterRegistry.get("blob.store.swept").functionCounter().count()).isPositive();
+    }
+
+    // The upload comes between the retirement of the blob and the second check of the references
+    @Test
+    public void testBlobSweeperKeepsContentUploadedWhileSweeping() throws Exception {
+        byte[] content = uniqueImage();
+        long deletedId = uploadPostOfContent(content);
+        String hash = jdbcTemplate.queryForObject("SELECT content_hash FROM files WHERE post_id = ?", String.class, deletedId);
+        client.delete()
+                .uri("/api/posts/" + deletedId)
+                .exchange()
+                .expectStatus().isOk();
+
+        assertTrue(blobStore.retireIfUnusedSince(hash, Instant.now().plusSeconds(1)));
+        long uploadedAgainId = uploadPostOfContent(content);
+        blobSweeper.sweep(Instant.EPOCH);
+
+        assertTrue(Files.exists(blobPath(hash)));
+        try(Stream<String> retired = blobStore.listRetired()) {
+            assertThat(retired).doesNotContain(hash);
+        }
+        client.get()
+                .uri("/api/posts/" + uploadedAgainId + "/content")
+                .exchange()
+                .expectStatus().isOk();
+    }
+
+    private Path blobPath(String hash) {
+        return blobStoreRoot.resolve(hash.substring(0, 2)).resolve(hash.substring(2, 4)).resolve(hash);
+    }
+
+    private long uploadPostOfContent(byte[] content) {
+        MultipartBodyBuilder builder = new MultipartBodyBuilder();
+        builder.part("title", "Cached");
+        builder.part("description", "This image is served from the content cache");
+        builder.part("file", new ByteArrayResource(content)).filename("image.jpg").contentType(MediaType.IMAGE_JPEG);
+        return client.post()
+                .uri("/api/posts?userId=1")
+                .body(BodyInserters.fromMultipartData(builder.build()))
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBody(PostDataDto.class)
+                .returnResult()
+                .getResponseBody()
+                .getId();
+    }
+
+    private byte[] uniqueImage() throws IOException {
+        byte[] image = new ClassPathResource("image.jpg").getContentAsByteArray();
+        byte[] suffix = UUID.randomUUID().toString().getBytes(StandardCharsets.US_ASCII);
+        byte[] content = Arrays.copyOf(image, image.length + suffix.length);
+        System.arraycopy(suffix, 0, content, image.length, suffix.length);
+        return content;
+    }
+
+    private byte[] awaitThumbnail(long postId, String size) throws InterruptedException {
+        for(int i = 0; i < 100; i++) {
+            EntityExchangeResult<byte[]> result = client.get()
+                    .uri("/api/posts/" + postId + "/content?size=" + size)
+                    .exchange()
+                    .expectStatus().isOk()
+                    .expectBody(byte[].class)
+                    .returnResult();
+            if(!result.getResponseHeaders().getCacheControl().contains("no-cache")) {
+                return result.getResponseBody();
+            }
+            Thread.sleep(100);
+        }
+        return fail("The thumbnail wasn't generated in time.");
+    }
+
+    private byte[] blankPng(int width, int height) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_BYTE_BINARY), "png", bytes);
+        return bytes.toByteArray();
+    }
+
+    private double cacheGets(String result) {
+        return meterRegistry.get("content.cache.gets").tag("result", result).functionCounter().count();
+    }
+
+    private long uploadPostOfUser(long userId) {
+        return client.post()
+                .uri("/api/posts?userId=" + userId)
+                .body(BodyInserters.fromMultipartData(formData))
+                .exchange()
+                .expectBody(PostDataDto.class)
+                .returnResult()
+                .getResponseBody()
+                .getId();
     }
 }
\ No newline at end of file
@@ -1,33 +1,62 @@
 package socialnetwork.controllers;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.web.server.LocalServerPort;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ProblemDetail;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.jdbc.Sql;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import socialnetwork.dtos.CreateUserCommand;
+import socialnetwork.dtos.DistanceDto;
+import socialnetwork.dtos.FriendPageDto;
+import socialnetwork.dtos.FriendSummaryDto;
+import socialnetwork.dtos.ModifyPersonalDataCommand;
+import socialnetwork.dtos.MutualFriendsDto;
 import socialnetwork.dtos.RelationshipDto;
+import socialnetwork.dtos.SuggestionDto;
 import socialnetwork.dtos.UserDto;
+import socialnetwork.cache.EntityCacheEvictor;
+import socialnetwork.cache.UserCache;
+import socialnetwork.graph.FriendshipGraph;
+import socialnetwork.graph.GraphAnalytics;
+import socialnetwork.graph.GraphReport;
+import socialnetwork.jobs.GraphAnalyticsJob;
+import socialnetwork.services.UserService;
 
 import java.net.URI;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.groups.Tuple.tuple;
 import static org.junit.jupiter.api.Assertions.assertAll;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
 @Sql(statements = {
         "INSERT INTO users (id, username, email, password, registered_on) VALUES (1, 'lifelover', 'springishere@gmail.com', '39d1da1f4f9fda75ac2c0b29b76c2149fe57256e3240ce35e1e74d6b6d898222', '2023-04-10 15:00:00')",
-        "INSERT INTO users (id, username, email, password, registered_on) VALUES (2, 'muddyboots', 'putonyourspringboots@gmail.com', '39d1da1f4f9fda75ac2c0b29b76c2149fe57256e3240ce35e1e74d6b6d898222', '2023-04-10 16:00:00')"
+        "INSERT INTO users (id, username, email, password, registered_on) VALUES (2, 'muddyboots', 'putonyourspringboots@gmail.com', '39d1da1f4f9fda75ac2c0b29b76c2149fe57256e3240ce35e1e74d6b6d898222', '2023-04-10 16:00:00')",
+        "INSERT INTO personal_data (user_id) VALUES (1), (2)"
 })
 @Sql(statements = {
+        "DELETE FROM graph_user_stats",
         "DELETE FROM personal_data",
         "DELETE FROM users_to_users",
+        "DELETE FROM change_log",
         "DELETE FROM users"
         }, executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
 class RelationshipControllerWebClientIT {
@@ -35,9 +64,37 @@ class RelationshipControllerWebClientIT {
     @Autowired
     private WebTestClient client;
 
+    @Autowired
+    private FriendshipGraph friendshipGraph;
+
+    @Autowired
+    private UserCache userCache;
+
+    @Autowired
+    private EntityCacheEvictor entityCacheEvictor;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private GraphAnalytics graphAnalytics;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
     @LocalServerPort
     private String port;
 
+    @BeforeEach
+    public void reloadFriendshipGraph() {
+        friendshipGraph.reload();
+        userCache.invalidateAll();
+        entityCacheEvictor.evictAll();
+    }
+
     @Test
     public void testSaveRelationship() {
         client.put()
@@ -54,6 +111,53 @@ class RelationshipControllerWebClientIT {
                 );
     }
 
+    @Test
+    public void testSaveRelationshipIsIdempotent() {
+        client.put()
+                .uri("/api/users/1/2")
+                .exchange()
+                .expectStatus().isCreated();
+
+        client.put()
+                .uri("/api/users/2/1")
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBody(RelationshipDto.class)
+                .value(dto -> assertThat(dto.getFriends())
+                        .singleElement()
+                        .extracting(UserDto::getId, UserDto::getFriends)
+                        .containsExactly(1L, Set.of(2L)));
+
+        client.get()
+                .uri("/api/users/1/friends?full=true")
+                .exchange()
+                .expectBody(RelationshipDto.class)
+                .value(dto -> assertThat(dto.getFriends())
+                        .extracting(UserDto::getId)
+                        .containsExactly(2L));
+    }
+
+    @Test
+    public void testSaveRelationshipFromBothSidesConcurrently() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            for(int i = 0; i < 10; i++) {
+                Future<?> forward = executor.submit(() -> client.put().uri("/api/users/1/2").exchange().expectStatus().isCreated());
+                Future<?> backward = executor.submit(() -> client.put().uri("/api/users/2/1").exchange().expectStatus().isCreated());
+                forward.get();
+                backward.get();
+
+                assertEquals(2, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM users_to_users", Integer.class));
+                assertEquals(List.of(1, 1), jdbcTemplate.queryForList("SELECT friend_count FROM users ORDER BY id", Integer.class));
+
+                client.delete().uri("/api/users/2/1").exchange().expectStatus().isNoContent();
+                assertEquals(List.of(0, 0), jdbcTemplate.queryForList("SELECT friend_count FROM users ORDER BY id", Integer.class));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
     @Test
     public void testSaveRelationWithBadId() {
         client.put()
@@ -133,7 +237,7 @@ class RelationshipControllerWebClientIT {
                 .exchange();
 
         client.get()
-                .uri("/api/users/1/friends")
+                .uri("/api/users/1/friends?full=true")
                 .exchange()
                 .expectStatus().isOk()
                 .expectBody(RelationshipDto.class)
@@ -143,4 +247,243 @@ class RelationshipControllerWebClientIT {
                         .containsOnly("muddyboots", "springboots"));
 
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testListFriendsOfUserFollowsChanges() {
+        long id = client.post()
+                .uri("/api/users")
+                .bodyValue(new CreateUserCommand("springboots", "codingisfun@gmail.com", "12345678"))
+                .exchange()
+                .expectBody(UserDto.class)
+                .returnResult()
+                .getResponseBody()
+                .getId();
+
+        client.put().uri("/api/users/1/2").exchange();
+        client.put().uri("/api/users/1/" + id).exchange();
+        client.put().uri("/api/users/2/" + id).exchange();
+
+        client.get()
+                .uri("/api/users/1/friends?full=true")
+                .exchange()
+                .expectBody(RelationshipDto.class)
+                .value(dto -> assertThat(dto.getFriends())
+                        .extracting(UserDto::getId, UserDto::getFriends)
+                        .containsOnly(tuple(2L, Set.of(1L, id)), tuple(id, Set.of(1L, 2L))));
+
+        client.delete().uri("/api/users/1/2").exchange().expectStatus().isNoContent();
+        client.delete().uri("/api/users/" + id).exchange().expectStatus().isNoContent();
+
+        client.get()
+                .uri("/api/users/1/friends?full=true")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(RelationshipDto.class)
+                .value(dto -> assertThat(dto.getFriends()).isEmpty());
+        client.get()
+                .uri("/api/users/42/friends?full=true")
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    @Test
+    public void testListFriendsInPages() {
+        long id3 = registerUser("springboots", "codingisfun@gmail.com");
+        long id4 = registerUser("summertime", "sunshine@gmail.com");
+        client.put()
+                .uri("/api/users/" + id3 + "/personal")
+                .bodyValue(new ModifyPersonalDataCommand(null, null, "Budapest"))
+                .exchange()
+                .expectStatus().isOk();
+        for(long friendId : List.of(id4, 2L, id3)) {
+            client.put().uri("/api/users/1/" + friendId).exchange().expectStatus().isCreated();
+        }
+
+        FriendPageDto first = client.get()
+                .uri("/api/users/1/friends?limit=2")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(FriendPageDto.class)
+                .returnResult()
+                .getResponseBody();
+        assertThat(first.getFriends())
+                .extracting(FriendSummaryDto::getId, FriendSummaryDto::getUsername, FriendSummaryDto::getCity)
+                .containsExactly(tuple(2L, "muddyboots", null), tuple(id3, "springboots", "Budapest"));
+        assertEquals(id3, first.getNext());
+
+        client.get()
+                .uri("/api/users/1/friends?limit=2&after=" + first.getNext())
+                .exchange()
+                .expectBody(FriendPageDto.class)
+                .value(dto -> assertAll(
+                        () -> assertThat(dto.getFriends()).extracting(FriendSummaryDto::getId).containsExactly(id4),
+                        () -> assertNull(dto.getNext())
+                ));
+
+        client.get()
+                .uri("/api/users/42/friends")
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    @Test
+    public void testFriendCounters() {
+        long id3 = registerUser("springboots", "codingisfun@gmail.com");
+        for(String edge : List.of("1/2", "2/1", "1/" + id3, "2/" + id3)) {
+            client.put().uri("/api/users/" + edge).exchange().expectStatus().isCreated();
+        }
+        assertFriendCount(1, 2);
+        assertFriendCount(2, 2);
+
+        client.delete().uri("/api/users/1/2").exchange().expectStatus().isNoContent();
+        client.delete().uri("/api/users/" + id3).exchange();
+        assertFriendCount(1, 0);
+        assertFriendCount(2, 0);
+
+        jdbcTemplate.update("UPDATE users SET friend_count = 5 WHERE id = 1");
+        assertEquals(1, userService.reconcileCounters(1, id3));
+        assertFriendCount(1, 0);
+    }
+
+    @Test
+    public void testGraphAnalyticsJob(@TempDir Path directory) throws Exception {
+        long id3 = registerUser("springboots", "codingisfun@gmail.com");
+        long id4 = registerUser("summertime", "sunshine@gmail.com");
+        registerUser("autumnleaves", "fallingdown@gmail.com");
+        for(String edge : List.of("1/2", "2/" + id3, id3 + "/1", id3 + "/" + id4)) {
+            client.put().uri("/api/users/" + edge).exchange().expectStatus().isCreated();
+        }
+        Path reportFile = directory.resolve("graph-report.json");
+
+        new GraphAnalyticsJob(graphAnalytics, objectMapper, reportFile).run(null);
+
+        GraphReport report = objectMapper.readValue(reportFile.toFile(), GraphReport.class);
+        assertAll(
+                () -> assertEquals(5, report.users()),
+                () -> assertEquals(4, report.friendships()),
+                () -> assertEquals(2, report.components()),
+                () -> assertEquals(4, report.largestComponent()),
+                () -> assertEquals(1, report.triangles()),
+                () -> assertEquals(Map.of(0, 1L, 1, 1L, 2, 2L, 3, 1L), report.degreeHistogram()),
+                () -> assertEquals(new GraphReport.UserStats(id3, 3, 1), report.topByDegree().get(0))
+        );
+        assertThat(jdbcTemplate.queryForList("SELECT user_id, degree, component_id, triangles FROM graph_user_stats ORDER BY user_id"))
+                .extracting(row -> row.get("USER_ID"), row -> row.get("DEGREE"), row -> row.get("COMPONENT_ID"), row -> row.get("TRIANGLES"))
+                .containsExactly(
+                        tuple(1L, 2, 1L, 1L),
+                        tuple(2L, 2, 1L, 1L),
+                        tuple(id3, 3, 1L, 1L),
+                        tuple(id4, 1, 1L, 0L));
+    }
+
+    @Test
+    public void testMutualFriendsAndSuggestions() {
+        long id3 = registerUser("springboots", "codingisfun@gmail.com");
+        long id4 = registerUser("summertime", "sunshine@gmail.com");
+        long id5 = registerUser("autumnleaves", "fallingdown@gmail.com");
+        for(String edge : List.of("1/2", "1/" + id3, "2/" + id4, id3 + "/" + id4, "2/" + id5)) {
+            client.put().uri("/api/users/" + edge).exchange().expectStatus().isCreated();
+        }
+
+        client.get()
+                .uri("/api/users/1/friends/mutual/" + id4)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(MutualFriendsDto.class)
+                .value(dto -> assertAll(
+                        () -> assertEquals(2, dto.getCount()),
+                        () -> assertEquals(List.of(2L, id3), dto.getFriends())
+                ));
+
+        client.get()
+                .uri("/api/users/1/suggestions")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(SuggestionDto.class)
+                .value(list -> assertThat(list)
+                        .extracting(SuggestionDto::getUserId, SuggestionDto::getUsername, SuggestionDto::getMutualFriends)
+                        .containsExactly(tuple(id4, "summertime", 2), tuple(id5, "autumnleaves", 1)));
+
+        client.get()
+                .uri("/api/users/1/suggestions?limit=1")
+                .exchange()
+                .expectBodyList(SuggestionDto.class)
+                .value(list -> assertThat(list).extracting(SuggestionDto::getUserId).containsExactly(id4));
+
+        client.get()
+                .uri("/api/users/1/friends/mutual/42")
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    @Test
+    public void testFindDistance() {
+        long id3 = registerUser("springboots", "codingisfun@gmail.com");
+        long id4 = registerUser("summertime", "sunshine@gmail.com");
+        long id5 = registerUser("autumnleaves", "fallingdown@gmail.com");
+        for(String edge : List.of("1/2", "2/" + id3, id3 + "/" + id4, "1/" + id4)) {
+            client.put().uri("/api/users/" + edge).exchange().expectStatus().isCreated();
+        }
+
+        client.get()
+                .uri("/api/users/2/distance/" + id4)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(DistanceDto.class)
+                .value(dto -> assertAll(
+                        () -> assertEquals(2, dto.getDistance()),
+                        () -> assertEquals(3, dto.getPath().size()),
+                        () -> assertEquals(2L, dto.getPath().get(0)),
+                        () -> assertEquals(id4, dto.getPath().get(2))
+                ));
+
+        client.delete().uri("/api/users/1/" + id4).exchange().expectStatus().isNoContent();
+        client.get()
+                .uri("/api/users/1/distance/" + id4)
+                .exchange()
+                .expectBody(DistanceDto.class)
+                .value(dto -> assertAll(
+                        () -> assertEquals(3, dto.getDistance()),
+                        () -> assertEquals(List.of(1L, 2L, id3, id4), dto.getPath())
+                ));
+
+        client.get()
+                .uri("/api/users/1/distance/" + id4 + "?maxDepth=2")
+                .exchange()
+                .expectBody(DistanceDto.class)
+                .value(dto -> assertAll(
+                        () -> assertNull(dto.getDistance()),
+                        () -> assertTrue(dto.getPath().isEmpty())
+                ));
+
+        client.get()
+                .uri("/api/users/1/distance/" + id5)
+                .exchange()
+                .expectBody(DistanceDto.class)
+                .value(dto -> assertNull(dto.getDistance()));
+
+        client.get()
+                .uri("/api/users/1/distance/42")
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    private void assertFriendCount(long userId, int expected) {
+        client.get()
+                .uri("/api/users/" + userId)
+                .exchange()
+                .expectBody(UserDto.class)
+                .value(dto -> assertEquals(expected, dto.getFriendCount()));
+    }
+
+    private long registerUser(String username, String email) {
+        return client.post()
+                .uri("/api/users")
+                .bodyValue(new CreateUserCommand(username, email, "12345678"))
+                .exchange()
+                .expectBody(UserDto.class)
+                .returnResult()
+                .getResponseBody()
+                .getId();
+    }
+}
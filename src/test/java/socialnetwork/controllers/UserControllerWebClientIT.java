@@ -1,5 +1,6 @@
 package socialnetwork.controllers;
 
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
@@ -13,9 +14,22 @@ import socialnetwork.dtos.ModifyUserCommand;
 import socialnetwork.dtos.ModifyPersonalDataCommand;
 import socialnetwork.dtos.UserDto;
 import socialnetwork.models.RequestParameter;
+import socialnetwork.services.UserService;
 import socialnetwork.utils.TimeMachine;
+import socialnetwork.cache.EntityCacheEvictor;
+import socialnetwork.cache.UserCache;
+import socialnetwork.graph.FriendshipGraph;
 
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongFunction;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 
@@ -27,6 +41,7 @@ import static org.junit.jupiter.api.Assertions.*;
 @Sql(statements = {
         "DELETE FROM personal_data",
         "DELETE FROM users_to_users",
+        "DELETE FROM change_log",
         "DELETE FROM users"
         }, executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
 public class UserControllerWebClientIT {
@@ -34,9 +49,28 @@ public class UserControllerWebClientIT {
     @Autowired
     private WebTestClient client;
 
+    @Autowired
+    private FriendshipGraph friendshipGraph;
+
+    @Autowired
+    private UserCache userCache;
+
+    @Autowired
+    private EntityCacheEvictor entityCacheEvictor;
+
+    @Autowired
+    private UserService userService;
+
     @LocalServerPort
     private String port;
 
+    @BeforeEach
+    public void reloadFriendshipGraph() {
+        friendshipGraph.reload();
+        userCache.invalidateAll();
+        entityCacheEvictor.evictAll();
+    }
+
     @Test
     public void testRegistrationAndDelete() {
         TimeMachine.set(LocalDateTime.parse("2023-04-09T16:45:00"));
@@ -165,6 +199,7 @@ public class UserControllerWebClientIT {
 
         assertEquals(406, problem.getStatus());
         assertEquals(URI.create("socialnetwork/invalid-arguments"), problem.getType());
+        assertEquals("The data conflicts with an existing record or violates a constraint.", problem.getDetail());
     }
 
     @Test
@@ -282,4 +317,257 @@ public class UserControllerWebClientIT {
 
         TimeMachine.clear();
     }
+
+    @Test
+    public void testSearchingUsersBySubstrings() {
+        long id1 = client.post()
+                .uri("/api/users")
+                .bodyValue(new CreateUserCommand("lifelover", "springishere@gmail.com", "12345678"))
+                .exchange()
+                .expectBody(UserDto.class)
+                .returnResult()
+                .getResponseBody()
+                .getId();
+        long id2 = client.post()
+                .uri("/api/users")
+                .bodyValue(new CreateUserCommand("muddyboots", "putonyourspringboots@gmail.com", "12345678"))
+                .exchange()
+                .expectBody(UserDto.class)
+                .returnResult()
+                .getResponseBody()
+                .getId();
+
+        client.put()
+                .uri("/api/users/{id}/personal", id1)
+                .bodyValue(new ModifyPersonalDataCommand("Gipsz Jakab", null, "Budapest"))
+                .exchange()
+                .expectStatus().isOk();
+
+        client.get()
+                .uri("/api/users?email=springboot")
+                .exchange()
+                .expectBodyList(UserDto.class)
+                .value(l -> assertThat(l).extracting(UserDto::getId).containsExactly(id2));
+
+        client.get()
+                .uri("/api/users?realName=sz Jak&city=Budapest")
+                .exchange()
+                .expectBodyList(UserDto.class)
+                .value(l -> assertThat(l).extracting(UserDto::getId).containsExactly(id1));
+
+        client.get()
+                .uri("/api/users?username=lo&email=gmail")
+                .exchange()
+                .expectBodyList(UserDto.class)
+                .value(l -> assertThat(l).extracting(UserDto::getId).containsExactly(id1));
+
+        client.put()
+                .uri("/api/users/{id}", id2)
+                .bodyValue(new ModifyUserCommand("mud@example.com", "12345678"))
+                .exchange()
+                .expectStatus().isOk();
+
+        client.get()
+                .uri("/api/users?email=springboot")
+                .exchange()
+                .expectBodyList(UserDto.class)
+                .value(l -> assertThat(l).isEmpty());
+
+        client.get()
+                .uri("/api/users?email=example")
+                .exchange()
+                .expectBodyList(UserDto.class)
+                .value(l -> assertThat(l).extracting(UserDto::getId).containsExactly(id2));
+
+        client.delete()
+                .uri("/api/users/{id}", id2)
+                .exchange()
+                .expectStatus().isNoContent();
+
+        client.get()
+                .uri("/api/users?username=boots")
+                .exchange()
+                .expectBodyList(UserDto.class)
+                .value(l -> assertThat(l).isEmpty());
+    }
+
+    @Test
+    public void testPagingUsers() {
+        long[] ids = new long[3];
+        String[] usernames = {"lifelover", "muddyboots", "springboots"};
+        for(int i = 0; i < ids.length; i++) {
+            ids[i] = client.post()
+                    .uri("/api/users")
+                    .bodyValue(new CreateUserCommand(usernames[i], usernames[i] + "@gmail.com", "12345678"))
+                    .exchange()
+                    .expectBody(UserDto.class)
+                    .returnResult()
+                    .getResponseBody()
+                    .getId();
+        }
+        client.put()
+                .uri("/api/users/{userId}/{friendId}", ids[0], ids[2])
+                .exchange()
+                .expectStatus().isCreated();
+
+        client.get()
+                .uri("/api/users?limit=2&count=true")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals("X-Total-Count", "3")
+                .expectHeader().value("Link", link -> assertThat(link).endsWith("after=" + ids[1] + ">; rel=\"next\""))
+                .expectBodyList(UserDto.class)
+                .value(l -> {
+                    assertThat(l).extracting(UserDto::getId).containsExactly(ids[0], ids[1]);
+                    assertThat(l.get(0).getFriends()).containsExactly(ids[2]);
+                    assertThat(l.get(1).getFriends()).isEmpty();
+                });
+
+        client.get()
+                .uri("/api/users?limit=2&after={after}&friends=false", ids[1])
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().doesNotExist("Link")
+                .expectHeader().doesNotExist("X-Total-Count")
+                .expectBodyList(UserDto.class)
+                .value(l -> {
+                    assertThat(l).extracting(UserDto::getId).containsExactly(ids[2]);
+                    assertNull(l.get(0).getFriends());
+                });
+
+        client.get()
+                .uri("/api/users?username=boots&limit=1&count=true")
+                .exchange()
+                .expectHeader().valueEquals("X-Total-Count", "2")
+                .expectBodyList(UserDto.class)
+                .value(l -> assertThat(l).extracting(UserDto::getId).containsExactly(ids[1]));
+    }
+
+    @Test
+    public void testCachedProfileIsInvalidatedByChanges() {
+        long id1 = client.post()
+                .uri("/api/users")
+                .bodyValue(new CreateUserCommand("lifelover", "springishere@gmail.com", "12345678"))
+                .exchange()
+                .expectBody(UserDto.class)
+                .returnResult()
+                .getResponseBody()
+                .getId();
+        long id2 = client.post()
+                .uri("/api/users")
+                .bodyValue(new CreateUserCommand("muddyboots", "putonyourspringboots@gmail.com", "12345678"))
+                .exchange()
+                .expectBody(UserDto.class)
+                .returnResult()
+                .getResponseBody()
+                .getId();
+
+        client.get().uri("/api/users/{id}", id1).exchange().expectStatus().isOk();
+        double hitRatio = userCache.getHitRatio();
+        client.get().uri("/api/users/{id}", id1).exchange().expectStatus().isOk();
+        assertTrue(userCache.getHitRatio() > hitRatio);
+
+        client.put()
+                .uri("/api/users/{id}/personal", id1)
+                .bodyValue(new ModifyPersonalDataCommand("Gipsz Jakab", null, "Budapest"))
+                .exchange()
+                .expectStatus().isOk();
+        client.put()
+                .uri("/api/users/{userId}/{friendId}", id2, id1)
+                .exchange()
+                .expectStatus().isCreated();
+
+        client.get()
+                .uri("/api/users/{id}", id1)
+                .exchange()
+                .expectBody(UserDto.class)
+                .value(dto -> {
+                    assertEquals("Gipsz Jakab", dto.getPersonalData().getRealName());
+                    assertThat(dto.getFriends()).containsExactly(id2);
+                    assertEquals(1, dto.getFriendCount());
+                });
+
+        client.delete()
+                .uri("/api/users/{id}", id2)
+                .exchange()
+                .expectStatus().isNoContent();
+
+        client.get()
+                .uri("/api/users/{id}", id1)
+                .exchange()
+                .expectBody(UserDto.class)
+                .value(dto -> {
+                    assertThat(dto.getFriends()).isEmpty();
+                    assertEquals(0, dto.getFriendCount());
+                });
+        client.get()
+                .uri("/api/users/{id}", id2)
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    @Test
+    public void testCachedProfileIsNotChangedByCallers() {
+        long id = client.post()
+                .uri("/api/users")
+                .bodyValue(new CreateUserCommand("lifelover", "springishere@gmail.com", "12345678"))
+                .exchange()
+                .expectBody(UserDto.class)
+                .returnResult()
+                .getResponseBody()
+                .getId();
+
+        UserDto loaded = userService.getUserById(id);
+        loaded.getPersonalData().setRealName("Gipsz Jakab");
+        loaded.getFriends().add(42L);
+        UserDto cached = userService.getUserById(id);
+        cached.setUsername("muddyboots");
+
+        double hitRatio = userCache.getHitRatio();
+        UserDto again = userService.getUserById(id);
+        assertTrue(userCache.getHitRatio() > hitRatio);
+        assertEquals("lifelover", again.getUsername());
+        assertNull(again.getPersonalData().getRealName());
+        assertThat(again.getFriends()).isEmpty();
+    }
+
+    @Test
+    public void testConcurrentMissesAreLoadedOnce() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        LongFunction<UserDto> loader = id -> {
+            loads.incrementAndGet();
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            UserDto dto = new UserDto();
+            dto.setId(id);
+            return dto;
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<UserDto> first = executor.submit(() -> userCache.get(42, loader));
+            started.await();
+            List<Future<UserDto>> others = new ArrayList<>();
+            for(int i = 0; i < 3; i++) {
+                others.add(executor.submit(() -> userCache.get(42, loader)));
+            }
+            Thread.sleep(100);
+            release.countDown();
+            UserDto loaded = first.get(5, TimeUnit.SECONDS);
+            for(Future<UserDto> other : others) {
+                UserDto waited = other.get(5, TimeUnit.SECONDS);
+                assertNotSame(loaded, waited);
+                assertEquals(42, waited.getId());
+            }
+            assertEquals(1, loads.get());
+        } finally {
+            executor.shutdownNow();
+            userCache.invalidate(42);
+        }
+    }
 }